@@ -0,0 +1,170 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Compares the SAX ListBucket parser with ListBucketDecoder on a generated
+ * page of S3 listing output. Both parse the same bytes, after a warm-up
+ * round that is not counted, and must agree on every entry. Reports pages
+ * and megabytes per second and the bytes allocated per page.
+ * <p>
+ * Usage: ListBucketBenchmark [entries] [seconds]
+ */
+public class ListBucketBenchmark {
+
+	private interface Parser {
+		/** Parses one page, returns the number of entries */
+		int parse(byte[] page, ListEntryVisitor visitor) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		byte[] page = page(entries);
+
+		Parser sax = new Parser() {
+			public int parse(byte[] page, ListEntryVisitor visitor)
+					throws Exception {
+				XMLReader xr = Utils.createXMLReader();
+				ListBucketResponse.ListBucketHandler handler = new ListBucketResponse.ListBucketHandler(
+						visitor);
+				xr.setContentHandler(handler);
+				xr.setErrorHandler(handler);
+				xr.parse(new InputSource(new ByteArrayInputStream(page)));
+				return handler.getEntryCount();
+			}
+		};
+		Parser decoder = new Parser() {
+			public int parse(byte[] page, ListEntryVisitor visitor)
+					throws Exception {
+				ListBucketDecoder decoder = ListBucketDecoder.acquire();
+				try {
+					decoder.decode(new ByteArrayInputStream(page), visitor);
+					return decoder.entryCount;
+				} finally {
+					ListBucketDecoder.release(decoder);
+				}
+			}
+		};
+
+		check(page, sax, decoder);
+		System.out.println("ListBucket page of " + entries + " entries, "
+				+ page.length + " bytes");
+		run("sax", sax, page, seconds);
+		run("decoder", decoder, page, seconds);
+	}
+
+	/**
+	 * Makes sure both parsers see the same entries.
+	 */
+	private static void check(byte[] page, Parser a, Parser b)
+			throws Exception {
+		final List seenA = new ArrayList();
+		final List seenB = new ArrayList();
+		a.parse(page, entry -> seenA.add(describe(entry)));
+		b.parse(page, entry -> seenB.add(describe(entry)));
+		if (!seenA.equals(seenB)) {
+			throw new IllegalStateException("The parsers disagree");
+		}
+	}
+
+	private static String describe(ListEntry entry) {
+		return entry.key + "|" + entry.lastModified.getTime() + "|"
+				+ entry.eTag + "|" + entry.size + "|" + entry.storageClass
+				+ "|" + entry.owner.id + "|" + entry.owner.displayName;
+	}
+
+	private static void run(String name, Parser parser, byte[] page,
+			int seconds) throws Exception {
+		final long[] sizes = new long[1];
+		ListEntryVisitor visitor = entry -> sizes[0] += entry.size;
+
+		// warm up
+		long end = System.nanoTime() + seconds * 1000000000L / 2;
+		while (System.nanoTime() < end) {
+			parser.parse(page, visitor);
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().threadId();
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		end = start + seconds * 1000000000L;
+		int pages = 0;
+		long now;
+		do {
+			parser.parse(page, visitor);
+			pages++;
+			now = System.nanoTime();
+		} while (now < end);
+		allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+		double elapsed = (now - start) / 1e9;
+		System.out.println(String.format(
+				"%-8s %9.1f pages/s %8.1f MB/s %10d bytes allocated/page",
+				name, pages / elapsed, pages * (double) page.length / elapsed
+						/ (1024 * 1024), allocated / pages));
+	}
+
+	/**
+	 * Generates a truncated ListBucketResult page like the ones S3 sends.
+	 */
+	private static byte[] page(int entries) throws IOException {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+		xml.append("<Name>bench</Name><Prefix></Prefix><Marker></Marker>");
+		xml.append("<MaxKeys>").append(entries).append("</MaxKeys>");
+		xml.append("<IsTruncated>true</IsTruncated>");
+		for (int i = 0; i < entries; i++) {
+			String key = "photos/2006/" + (i % 12 + 1) + "/img_" + i
+					+ (i % 50 == 0 ? "_r&amp;d_été" : "") + ".jpg";
+			xml.append("<Contents>");
+			xml.append("<Key>").append(key).append("</Key>");
+			xml.append("<LastModified>2006-0").append(i % 9 + 1).append("-1")
+					.append(i % 10).append("T22:24:3").append(i % 10)
+					.append(".000Z</LastModified>");
+			xml.append("<ETag>&quot;").append(
+					String.format("%032x", (long) i * 0x9e3779b97f4a7c15L))
+					.append("&quot;</ETag>");
+			xml.append("<Size>").append(i * 7919L).append("</Size>");
+			xml.append("<Owner><ID>bcaf1ffd86f41161ca5fb16fd081034f</ID>");
+			xml.append("<DisplayName>webfile</DisplayName></Owner>");
+			xml.append("<StorageClass>STANDARD</StorageClass>");
+			xml.append("</Contents>");
+		}
+		xml.append("</ListBucketResult>");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,195 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the signing throughput of Utils.makeCanonicalString() and
+ * Utils.encode(), which set up a new Mac for every request, with a shared
+ * RequestSigner. Both sign the same requests, after a warm-up round that is
+ * not counted, and must make the same signatures.
+ * <p>
+ * Usage: SigningBenchmark [signatures] [threads]
+ */
+public class SigningBenchmark {
+
+	private static final String KEY_ID = "44CF9590006BF252F707";
+
+	private static final String SECRET = "OtxrzxIsfpFjA7SwPzILwy8Bw21TLhquhboDYROV";
+
+	private interface Signer {
+		String sign(String method, String resource, Map headers);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int signatures = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime
+				.getRuntime().availableProcessors();
+
+		Signer utils = new Signer() {
+			public String sign(String method, String resource, Map headers) {
+				return Utils.encode(SECRET, Utils.makeCanonicalString(method,
+						resource, headers), false);
+			}
+		};
+		final RequestSigner requestSigner = new RequestSigner(KEY_ID, SECRET);
+		Signer signer = new Signer() {
+			public String sign(String method, String resource, Map headers) {
+				return requestSigner.sign(method, resource, headers, null);
+			}
+		};
+
+		List<Map> requests = requests();
+		check(requests, utils, signer);
+		for (int t = 1; t <= threads; t *= 2) {
+			run("utils", utils, requests, signatures, t);
+			run("signer", signer, requests, signatures, t);
+		}
+	}
+
+	/**
+	 * Makes sure both signers agree on every request, with and without an
+	 * expiry time.
+	 */
+	private static void check(List<Map> requests, Signer signer,
+			Signer other) {
+		RequestSigner requestSigner = new RequestSigner(KEY_ID, SECRET);
+		for (int i = 0; i < requests.size(); i++) {
+			Map headers = requests.get(i);
+			String resource = resource(i);
+			if (!signer.sign("PUT", resource, headers).equals(
+					other.sign("PUT", resource, headers))) {
+				throw new IllegalStateException("The signers disagree on "
+						+ headers);
+			}
+			String canonical = Utils.makeCanonicalString("GET", resource,
+					headers, "1175139620");
+			if (!canonical.equals(requestSigner.canonicalString("GET",
+					resource, headers, "1175139620"))) {
+				throw new IllegalStateException(
+						"The signers disagree on the string to sign for "
+								+ headers);
+			}
+			String expected = Utils.encode(SECRET, canonical, false);
+			if (!expected.equals(requestSigner.sign("GET", resource, headers,
+					"1175139620"))) {
+				throw new IllegalStateException("The signers disagree on "
+						+ headers + " with an expiry");
+			}
+		}
+	}
+
+	private static void run(String name, final Signer signer,
+			final List<Map> requests, int signatures, int threads)
+			throws Exception {
+		// warm up
+		sign(signer, requests, signatures / 2, threads);
+
+		long start = System.nanoTime();
+		sign(signer, requests, signatures, threads);
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%-8s %2d thread(s) %11.0f signatures/s",
+				name, threads, signatures / elapsed));
+	}
+
+	private static void sign(final Signer signer, final List<Map> requests,
+			final int signatures, int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future> futures = new ArrayList<Future>();
+			final int each = signatures / threads;
+			for (int t = 0; t < threads; t++) {
+				final int offset = t;
+				futures.add(executor.submit(new Runnable() {
+					public void run() {
+						for (int i = 0; i < each; i++) {
+							int n = (offset + i) % requests.size();
+							signer.sign("PUT", resource(n), requests.get(n));
+						}
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				futures.get(i).get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static String resource(int i) {
+		switch (i % 4) {
+		case 0:
+			return "bench/photos/2006/img_" + i + ".jpg";
+		case 1:
+			return "bench/photos/2006/img_" + i + ".jpg?acl";
+		case 2:
+			return "bench/big_" + i + "?partNumber=3&uploadId=VXBsb2FkSUQ%3D";
+		default:
+			return "bench/?prefix=photos%2F&max-keys=100";
+		}
+	}
+
+	/**
+	 * Header sets like the ones the shell sends.
+	 */
+	private static List<Map> requests() {
+		List<Map> requests = new ArrayList<Map>();
+		for (int i = 0; i < 16; i++) {
+			Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+			headers.put("Date", Collections
+					.singletonList("Sat, 18 Mar 2006 22:24:35 GMT"));
+			headers.put("Content-Type", Collections.singletonList("image/jpeg"));
+			if (i % 2 == 0) {
+				headers.put("Content-MD5", Collections
+						.singletonList("1B2M2Y8AsgTpgAmY7PhCfg=="));
+			}
+			if (i % 3 == 0) {
+				headers.put("x-amz-acl", Collections.singletonList("public-read"));
+			}
+			if (i % 4 == 0) {
+				headers.put("x-amz-date", Collections
+						.singletonList("Sat, 18 Mar 2006 22:24:36 GMT"));
+			}
+			headers.put("x-amz-meta-title", Arrays.asList(new String[] {
+					" Holiday\n photo ", "café" }));
+			headers.put("X-Amz-Meta-Album", Collections.singletonList("2006"));
+			headers.put("User-Agent", Collections.singletonList("jSh3ll"));
+			if (i % 5 == 0) {
+				headers.put("x-amz-meta-album", Collections
+						.singletonList("duplicate"));
+			}
+			requests.add(headers);
+		}
+		return requests;
+	}
+}
@@ -0,0 +1,222 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.silvasoftinc.s3.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local stand-in for S3, just enough of it for benchmarking the client: PUT
+ * stores an object, GET returns it, DELETE removes it. Requests aren't
+ * authenticated. Every connection is kept alive and served on its own virtual
+ * thread, so the server keeps up with any of the client transports.
+ */
+public class StandInServer implements AutoCloseable {
+
+	private final ServerSocket serverSocket;
+
+	private final Map<String, byte[]> objects = new ConcurrentHashMap<String, byte[]>();
+
+	private final Thread acceptor;
+
+	public StandInServer() throws IOException {
+		serverSocket = new ServerSocket(0, 1024, InetAddress
+				.getLoopbackAddress());
+		acceptor = new Thread(this::accept, "stand-in-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public String getHost() {
+		return serverSocket.getInetAddress().getHostAddress();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stores an object without going through HTTP.
+	 */
+	public void put(String path, byte[] data) {
+		objects.put(path, data);
+	}
+
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				Thread.ofVirtual().start(() -> serve(socket));
+			} catch (IOException e) {
+				// closed
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket s = socket) {
+			s.setTcpNoDelay(true);
+			InputStream in = new BufferedInputStream(s.getInputStream(), 16384);
+			OutputStream out = new BufferedOutputStream(s.getOutputStream(),
+					16384);
+			while (serveRequest(in, out)) {
+			}
+		} catch (IOException e) {
+			// the client went away
+		}
+	}
+
+	/**
+	 * Serves one request, returns false once the client has closed the
+	 * connection.
+	 */
+	private boolean serveRequest(InputStream in, OutputStream out)
+			throws IOException {
+		String requestLine = readLine(in);
+		if (requestLine == null) {
+			return false;
+		}
+		String[] parts = requestLine.split(" ");
+		String method = parts[0];
+		String path = parts[1];
+		int query = path.indexOf('?');
+		if (query != -1) {
+			path = path.substring(0, query);
+		}
+
+		long contentLength = 0;
+		boolean chunked = false;
+		boolean close = false;
+		String line;
+		while ((line = readLine(in)) != null && line.length() > 0) {
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue;
+			}
+			String name = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+			if (name.equalsIgnoreCase("Content-Length")) {
+				contentLength = Long.parseLong(value);
+			} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+				chunked = value.equalsIgnoreCase("chunked");
+			} else if (name.equalsIgnoreCase("Connection")) {
+				close = value.equalsIgnoreCase("close");
+			}
+		}
+
+		byte[] body = chunked ? readChunked(in) : in
+				.readNBytes((int) contentLength);
+		if (body.length != contentLength && !chunked) {
+			throw new EOFException();
+		}
+
+		if (method.equals("PUT")) {
+			objects.put(path, body);
+			respond(out, 200, "OK", null);
+		} else if (method.equals("GET") || method.equals("HEAD")) {
+			byte[] data = objects.get(path);
+			if (data == null) {
+				respond(out, 404, "Not Found",
+						("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+								+ "<Error><Code>NoSuchKey</Code></Error>")
+								.getBytes("UTF-8"));
+			} else {
+				respond(out, 200, "OK", method.equals("HEAD") ? null : data);
+			}
+		} else if (method.equals("DELETE")) {
+			objects.remove(path);
+			respond(out, 204, "No Content", null);
+		} else {
+			respond(out, 405, "Method Not Allowed", null);
+		}
+		return !close;
+	}
+
+	private static void respond(OutputStream out, int code, String message,
+			byte[] body) throws IOException {
+		StringBuilder head = new StringBuilder(128);
+		head.append("HTTP/1.1 ").append(code).append(' ').append(message)
+				.append("\r\n");
+		head.append("x-amz-request-id: 0\r\n");
+		if (code != 204) {
+			head.append("Content-Length: ")
+					.append(body == null ? 0 : body.length).append("\r\n");
+		}
+		head.append("\r\n");
+		out.write(head.toString().getBytes("ISO-8859-1"));
+		if (body != null) {
+			out.write(body);
+		}
+		out.flush();
+	}
+
+	private static byte[] readChunked(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		while (true) {
+			String size = readLine(in);
+			if (size == null) {
+				throw new EOFException();
+			}
+			int semi = size.indexOf(';');
+			int length = Integer.parseInt(
+					(semi == -1 ? size : size.substring(0, semi)).trim(), 16);
+			if (length == 0) {
+				while ((size = readLine(in)) != null && size.length() > 0) {
+				}
+				return body.toByteArray();
+			}
+			body.write(in.readNBytes(length));
+			readLine(in);
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == '\r') {
+					line.setLength(length - 1);
+				}
+				return line.toString();
+			}
+			line.append((char) c);
+		}
+		return line.length() == 0 ? null : line.toString();
+	}
+}
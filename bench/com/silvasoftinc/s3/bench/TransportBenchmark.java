@@ -0,0 +1,221 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.silvasoftinc.s3.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazon.s3.AWSAuthConnection;
+import com.amazon.s3.GetStreamResponse;
+import com.amazon.s3.HttpClientTransport;
+import com.amazon.s3.HttpConnectionPool;
+import com.amazon.s3.HttpTransport;
+import com.amazon.s3.NioConnectionPool;
+import com.amazon.s3.S3Object;
+import com.amazon.s3.URLConnectionTransport;
+import com.silvasoftinc.s3.S3StreamObject;
+
+/**
+ * Compares the throughput of the HttpTransports against a StandInServer on
+ * the loopback interface. Every transport runs the same workloads (small and
+ * large GETs, buffered PUTs and streamed PUTs) with a number of requests in
+ * flight at once, after a warm-up round that is not counted.
+ * <p>
+ * Usage: TransportBenchmark [requests] [concurrency] [transport ...]
+ */
+public class TransportBenchmark {
+
+	private static final String BUCKET = "bench";
+
+	private static final int SMALL = 1024;
+
+	private static final int LARGE = 1024 * 1024;
+
+	private static final int PUT_SIZE = 64 * 1024;
+
+	private interface Workload {
+		/** Sends one request, returns the number of payload bytes moved */
+		long run(AWSAuthConnection conn, int i) throws IOException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		List<String> names = new ArrayList<String>();
+		for (int i = 2; i < args.length; i++) {
+			names.add(args[i]);
+		}
+		if (names.isEmpty()) {
+			names.add("jdk");
+			names.add("pool");
+			names.add("httpclient");
+			names.add("nio");
+		}
+
+		// let the JDK keep as many idle connections as the others do
+		System.setProperty("http.maxConnections", String.valueOf(concurrency));
+
+		byte[] small = new byte[SMALL];
+		byte[] large = new byte[LARGE];
+		byte[] put = new byte[PUT_SIZE];
+		try (StandInServer server = new StandInServer()) {
+			server.put("/" + BUCKET + "/small", small);
+			server.put("/" + BUCKET + "/large", large);
+
+			System.out.println(requests + " requests per workload, "
+					+ concurrency + " in flight");
+			System.out.println(String.format("%-12s %-14s %10s %10s %10s",
+					"transport", "workload", "req/s", "MB/s", "ms/req"));
+			for (String name : names) {
+				HttpTransport transport = createTransport(name, concurrency);
+				AWSAuthConnection conn = new AWSAuthConnection("id", "secret",
+						false, server.getHost(), server.getPort());
+				conn.setTransport(transport);
+
+				run(name, "get 1KB", conn, requests, concurrency,
+						(c, i) -> read(c.getStream(BUCKET, "small", null)));
+				run(name, "get 1MB", conn, requests / 10, concurrency,
+						(c, i) -> read(c.getStream(BUCKET, "large", null)));
+				run(name, "put 64KB", conn, requests, concurrency, (c, i) -> {
+					check(c.put(BUCKET, "put" + i, new S3Object(put, null),
+							null).connection.getResponseCode());
+					return PUT_SIZE;
+				});
+				run(name, "putstream 1MB", conn, requests / 10, concurrency, (
+						c, i) -> {
+					S3StreamObject object = new S3StreamObject(
+							new ByteArrayInputStream(large), null);
+					object.length = LARGE;
+					check(c.putStream(BUCKET, "stream" + i, object, null).connection
+							.getResponseCode());
+					return LARGE;
+				});
+
+				if (transport instanceof HttpConnectionPool) {
+					((HttpConnectionPool) transport).closeIdle();
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	private static HttpTransport createTransport(String name, int concurrency) {
+		if (name.equals("jdk")) {
+			return URLConnectionTransport.getInstance();
+		} else if (name.equals("pool")) {
+			return new HttpConnectionPool(concurrency,
+					HttpConnectionPool.DEFAULT_IDLE_TIMEOUT);
+		} else if (name.equals("httpclient")) {
+			return new HttpClientTransport(HttpClient.newBuilder().version(
+					HttpClient.Version.HTTP_1_1).connectTimeout(
+					Duration.ofSeconds(30)).executor(
+					Executors.newVirtualThreadPerTaskExecutor()).build());
+		} else if (name.equals("nio")) {
+			return new NioConnectionPool(concurrency,
+					HttpConnectionPool.DEFAULT_IDLE_TIMEOUT);
+		}
+		throw new IllegalArgumentException("unknown transport: " + name);
+	}
+
+	/**
+	 * Runs a workload once to warm up and once more timed, and prints the
+	 * timed result.
+	 */
+	private static void run(String transport, String workload,
+			AWSAuthConnection conn, int requests, int concurrency,
+			Workload task) throws Exception {
+		measure(conn, Math.max(requests / 5, concurrency), concurrency, task);
+		long[] result = measure(conn, requests, concurrency, task);
+		double seconds = result[0] / 1e9;
+		System.out.println(String.format("%-12s %-14s %10.0f %10.1f %10.2f",
+				transport, workload, requests / seconds, result[1]
+						/ (1024.0 * 1024.0) / seconds, result[2] / 1e6
+						/ requests));
+	}
+
+	/**
+	 * Returns the elapsed nanoseconds, the bytes moved, and the total
+	 * nanoseconds spent in requests.
+	 */
+	private static long[] measure(AWSAuthConnection conn, int requests,
+			int concurrency, Workload task) throws Exception {
+		AtomicInteger next = new AtomicInteger();
+		AtomicLong bytes = new AtomicLong();
+		AtomicLong latency = new AtomicLong();
+		List<Throwable> failures = new ArrayList<Throwable>();
+		long start = System.nanoTime();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < concurrency; t++) {
+			threads.add(Thread.ofVirtual().start(() -> {
+				int i;
+				while ((i = next.getAndIncrement()) < requests) {
+					long begin = System.nanoTime();
+					try {
+						bytes.addAndGet(task.run(conn, i));
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+						return;
+					}
+					latency.addAndGet(System.nanoTime() - begin);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - start;
+		if (!failures.isEmpty()) {
+			throw new IOException("benchmark request failed", failures.get(0));
+		}
+		return new long[] { elapsed, bytes.get(), latency.get() };
+	}
+
+	private static long read(GetStreamResponse response) throws IOException {
+		check(response.connection.getResponseCode());
+		long total = 0;
+		byte[] buf = new byte[16384];
+		int count;
+		try (InputStream in = response.connection.getInputStream()) {
+			while ((count = in.read(buf)) != -1) {
+				total += count;
+			}
+		}
+		return total;
+	}
+
+	private static void check(int code) throws IOException {
+		if (code != 200) {
+			throw new IOException("unexpected response code " + code);
+		}
+	}
+}
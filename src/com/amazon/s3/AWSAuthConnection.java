@@ -1,603 +1,2301 @@
-//  This software code is made available "AS IS" without warranties of any
-//  kind.  You may copy, display, modify and redistribute the software
-//  code either by itself or as incorporated into your code; provided that
-//  you do not remove any proprietary notices.  Your use of this software
-//  code is at your own risk and you waive any claim against Amazon
-//  Digital Services, Inc. or its affiliates with respect to your use of
-//  this software code. (c) 2006 Amazon Digital Services, Inc. or its
-//  affiliates.
-
-// Copyright (c) 2006 SilvaSoft, Inc.
-//
-// Permission is hereby granted, free of charge, to any person obtaining a
-// copy of this software and associated documentation files (the "Software"),
-// to deal in the Software without restriction, including without limitation
-// the rights to use, copy, modify, merge, publish, distribute, sublicense,
-// and/or sell copies of the Software, and to permit persons to whom the 
-// Software is furnished to do so, subject to the following conditions:
-//
-// The above copyright notice and this permission notice shall be included in
-// all copies or substantial portions of the Software.
-//
-// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
-// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
-// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
-// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
-// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
-// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
-// USE OR OTHER DEALINGS IN THE SOFTWARE.
-
-// author:    http://www.silvasoftinc.com
-// author:    Dominic Da Silva (dominic.dasilva@gmail.com)
-// version:   1.1
-// date:      04/09/2006
-
-package com.amazon.s3;
-
-import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
-import java.util.TimeZone;
-
-import com.silvasoftinc.s3.S3StreamObject;
-
-/**
- * An interface into the S3 system. It is initially configured with
- * authentication and connection parameters and exposes methods to access and
- * manipulate S3 data.
- */
-public class AWSAuthConnection {
-
-	private String awsAccessKeyId;
-
-	private String awsSecretAccessKey;
-
-	private boolean isSecure;
-
-	private String server;
-
-	private int port;
-
-	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey) {
-		this(awsAccessKeyId, awsSecretAccessKey, true);
-	}
-
-	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey,
-			boolean isSecure) {
-		this(awsAccessKeyId, awsSecretAccessKey, isSecure, Utils.DEFAULT_HOST);
-	}
-
-	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey,
-			boolean isSecure, String server) {
-		this(awsAccessKeyId, awsSecretAccessKey, isSecure, server,
-				isSecure ? Utils.SECURE_PORT : Utils.INSECURE_PORT);
-	}
-
-	/**
-	 * Create a new interface to interact with S3 with the given credential and
-	 * connection parameters
-	 * 
-	 * @param awsAccessKeyId
-	 *            The your user key into AWS
-	 * @param awsSecretAccessKey
-	 *            The secret string used to generate signatures for
-	 *            authentication.
-	 * @param isSecure
-	 *            True if the data should be encrypted on the wire on the way to
-	 *            or from S3.
-	 * @param server
-	 *            Which host to connect to. Usually, this will be
-	 *            s3.amazonaws.com
-	 * @param port
-	 *            Which port to use.
-	 */
-	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey,
-			boolean isSecure, String server, int port) {
-		this.awsAccessKeyId = awsAccessKeyId;
-		this.awsSecretAccessKey = awsSecretAccessKey;
-		this.isSecure = isSecure;
-		this.server = server;
-		this.port = port;
-	}
-
-	/**
-	 * Creates a new bucket.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket to create.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 * @param metadata
-	 *            A Map of String to List of Strings representing the s3
-	 *            metadata for this bucket (can be null).
-	 */
-	public Response createBucket(String bucket, Map headers)
-			throws MalformedURLException, IOException {
-		return new Response(makeRequest("PUT", bucket, headers));
-	}
-
-	/**
-	 * Lists the contents of a bucket.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket to create.
-	 * @param prefix
-	 *            All returned keys will start with this string (can be null).
-	 * @param marker
-	 *            All returned keys will be lexographically greater than this
-	 *            string (can be null).
-	 * @param maxKeys
-	 *            The maximum number of keys to return (can be null).
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public ListBucketResponse listBucket(String bucket, String prefix,
-			String marker, Integer maxKeys, Map headers)
-			throws MalformedURLException, IOException {
-		String path = Utils.pathForListOptions(bucket, prefix, marker, maxKeys);
-		return new ListBucketResponse(makeRequest("GET", path, headers));
-	}
-
-	/**
-	 * Deletes a bucket.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket to delete.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public Response deleteBucket(String bucket, Map headers)
-			throws MalformedURLException, IOException {
-		return new Response(makeRequest("DELETE", bucket, headers));
-	}
-
-	/**
-	 * Writes an object to S3.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket to which the object will be added.
-	 * @param key
-	 *            The name of the key to use.
-	 * @param object
-	 *            An S3Object containing the data to write.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public Response put(String bucket, String key, S3Object object, Map headers)
-			throws MalformedURLException, IOException {
-
-		boolean isEmptyKey = (key == null) || (key.length() == 0)
-				|| (key.trim().length() == 0);
-		String pathSep = isEmptyKey ? "" : "/";
-
-		if (key == null)
-			key = "";
-
-		HttpURLConnection request = makeRequest("PUT", bucket + pathSep
-				+ Utils.urlencode(key), headers, object);
-
-		request.setDoOutput(true);
-		request.getOutputStream().write(
-				object.data == null ? new byte[] {} : object.data);
-
-		return new Response(request);
-	}
-
-	/**
-	 * Writes an object to S3.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket to which the object will be added.
-	 * @param key
-	 *            The name of the key to use.
-	 * @param object
-	 *            An S3StreamObject containing the data stream to write.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public Response putStream(String bucket, String key, S3StreamObject object,
-			Map headers) throws MalformedURLException, IOException {
-
-		boolean isEmptyKey = (key == null) || (key.length() == 0)
-				|| (key.trim().length() == 0);
-		String pathSep = isEmptyKey ? "" : "/";
-
-		if (key == null)
-			key = "";
-		HttpURLConnection request = makeStreamRequest("PUT", bucket + pathSep
-				+ Utils.urlencode(key), headers, object);
-
-		request.setDoOutput(true);
-		if (object.length != 0) {
-			request.setFixedLengthStreamingMode((int) object.length);
-		}
-
-		byte[] buf = new byte[1024];
-		int bytesRead = 0;
-
-		OutputStream out = request.getOutputStream();
-		while ((bytesRead = object.stream.read(buf)) > 0) {
-			out.write(buf, 0, bytesRead);
-		}
-		out.close();
-
-		return new Response(request);
-	}
-
-	/**
-	 * Reads an object from S3.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket where the object lives.
-	 * @param key
-	 *            The name of the key to use.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public GetResponse get(String bucket, String key, Map headers)
-			throws MalformedURLException, IOException {
-
-		boolean isEmptyKey = (key == null) || (key.length() == 0)
-				|| (key.trim().length() == 0);
-		String pathSep = isEmptyKey ? "" : "/";
-
-		if (key == null)
-			key = "";
-
-		return new GetResponse(makeRequest("GET", bucket + pathSep
-				+ Utils.urlencode(key), headers));
-	}
-
-	/**
-	 * Reads an object from S3 using streaming.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket where the object lives.
-	 * @param key
-	 *            The name of the key to use.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public GetStreamResponse getStream(String bucket, String key, Map headers)
-			throws MalformedURLException, IOException {
-
-		boolean isEmptyKey = (key == null) || (key.length() == 0)
-				|| (key.trim().length() == 0);
-		String pathSep = isEmptyKey ? "" : "/";
-
-		if (key == null)
-			key = "";
-
-		return new GetStreamResponse(makeRequest("GET", bucket + pathSep
-				+ Utils.urlencode(key), headers));
-	}
-
-	/**
-	 * Reads a BitTorrent file (.torrent) for an object from S3.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket where the object lives.
-	 * @param key
-	 *            The name of the key to use.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public GetResponse getTorrent(String bucket, String key, Map headers)
-			throws MalformedURLException, IOException {
-
-		boolean isEmptyKey = (key == null) || (key.length() == 0)
-				|| (key.trim().length() == 0);
-		String pathSep = isEmptyKey ? "" : "/";
-
-		if (key == null)
-			key = "";
-
-		return new GetResponse(makeRequest("GET", bucket + pathSep
-				+ Utils.urlencode(key) + "?torrent", headers));
-	}
-
-	/**
-	 * Deletes an object from S3.
-	 * 
-	 * @param bucket
-	 *            The name of the bucket where the object lives.
-	 * @param key
-	 *            The name of the key to use.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public Response delete(String bucket, String key, Map headers)
-			throws MalformedURLException, IOException {
-		boolean isEmptyKey = (key == null) || (key.length() == 0)
-				|| (key.trim().length() == 0);
-		String pathSep = isEmptyKey ? "" : "/";
-
-		if (key == null)
-			key = "";
-		return new Response(makeRequest("DELETE", bucket + pathSep
-				+ Utils.urlencode(key), headers));
-	}
-
-	/**
-	 * Get the ACL for a given bucket
-	 * 
-	 * @param bucket
-	 *            The name of the bucket where the object lives.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public GetResponse getBucketACL(String bucket, Map headers)
-			throws MalformedURLException, IOException {
-		return getACL(bucket, "", headers);
-	}
-
-	/**
-	 * Get the ACL for a given object (or bucket, if key is null).
-	 * 
-	 * @param bucket
-	 *            The name of the bucket where the object lives.
-	 * @param key
-	 *            The name of the key to use.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public GetResponse getACL(String bucket, String key, Map headers)
-			throws MalformedURLException, IOException {
-
-		boolean isEmptyKey = (key == null) || (key.length() == 0)
-				|| (key.trim().length() == 0);
-		String pathSep = isEmptyKey ? "" : "/";
-
-		if (key == null)
-			key = "";
-		return new GetResponse(makeRequest("GET", bucket + pathSep
-				+ Utils.urlencode(key) + "?acl", headers));
-	}
-
-	/**
-	 * Write a new ACL for a given bucket
-	 * 
-	 * @param aclXMLDoc
-	 *            The xml representation of the ACL as a String
-	 * @param bucket
-	 *            The name of the bucket where the object lives.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public Response putBucketACL(String bucket, String aclXMLDoc, Map headers)
-			throws MalformedURLException, IOException {
-		return putACL(bucket, "", aclXMLDoc, headers);
-	}
-
-	/**
-	 * Write a new ACL for a given object
-	 * 
-	 * @param aclXMLDoc
-	 *            The xml representation of the ACL as a String
-	 * @param bucket
-	 *            The name of the bucket where the object lives.
-	 * @param key
-	 *            The name of the key to use.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public Response putACL(String bucket, String key, String aclXMLDoc,
-			Map headers) throws MalformedURLException, IOException {
-		S3Object object = new S3Object(aclXMLDoc.getBytes(), null);
-
-		boolean isEmptyKey = (key == null) || (key.length() == 0)
-				|| (key.trim().length() == 0);
-		String pathSep = isEmptyKey ? "" : "/";
-
-		if (key == null)
-			key = "";
-		HttpURLConnection request = makeRequest("PUT", bucket + pathSep
-				+ Utils.urlencode(key) + "?acl", headers, object);
-
-		request.setDoOutput(true);
-		request.getOutputStream().write(
-				object.data == null ? new byte[] {} : object.data);
-
-		return new Response(request);
-	}
-
-	/**
-	 * List all the buckets created by this account.
-	 * 
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	public ListAllMyBucketsResponse listAllMyBuckets(Map headers)
-			throws MalformedURLException, IOException {
-		return new ListAllMyBucketsResponse(makeRequest("GET", "", headers));
-	}
-
-	/**
-	 * Make a new HttpURLConnection without passing an S3Object parameter.
-	 */
-	private HttpURLConnection makeRequest(String method, String resource,
-			Map headers) throws MalformedURLException, IOException {
-		return makeRequest(method, resource, headers, null);
-	}
-
-	/**
-	 * Make a new HttpURLConnection.
-	 * 
-	 * @param method
-	 *            The HTTP method to use (GET, PUT, DELETE)
-	 * @param resource
-	 *            The resource name (bucketName + "/" + key).
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 * @param object
-	 *            The S3Object that is to be written (can be null).
-	 */
-	private HttpURLConnection makeRequest(String method, String resource,
-			Map headers, S3Object object) throws MalformedURLException,
-			IOException {
-		URL url = makeURL(resource);
-		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-		connection.setConnectTimeout(3600000); // 1hr
-		connection.setRequestMethod(method);
-
-		addHeaders(connection, headers);
-		if (object != null)
-			addMetadataHeaders(connection, object.metadata);
-		addAuthHeader(connection, method, resource);
-
-		return connection;
-	}
-
-	/**
-	 * Make a new HttpURLConnection.
-	 * 
-	 * @param method
-	 *            The HTTP method to use (GET, PUT, DELETE)
-	 * @param resource
-	 *            The resource name (bucketName + "/" + key).
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 * @param object
-	 *            The S3StreamObject that is to be written (can be null).
-	 */
-	private HttpURLConnection makeStreamRequest(String method, String resource,
-			Map headers, S3StreamObject object) throws MalformedURLException,
-			IOException {
-		URL url = makeURL(resource);
-		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-		connection.setConnectTimeout(3600000); // 1hr
-		connection.setRequestMethod(method);
-
-		addHeaders(connection, headers);
-		if (object != null)
-			addMetadataHeaders(connection, object.metadata);
-		addAuthHeader(connection, method, resource);
-
-		return connection;
-	}
-
-	/**
-	 * Add the given headers to the HttpURLConnection.
-	 * 
-	 * @param connection
-	 *            The HttpURLConnection to which the headers will be added.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 */
-	private void addHeaders(HttpURLConnection connection, Map headers) {
-		addHeaders(connection, headers, "");
-	}
-
-	/**
-	 * Add the given metadata fields to the HttpURLConnection.
-	 * 
-	 * @param connection
-	 *            The HttpURLConnection to which the headers will be added.
-	 * @param metadata
-	 *            A Map of String to List of Strings representing the s3
-	 *            metadata for this resource.
-	 */
-	private void addMetadataHeaders(HttpURLConnection connection, Map metadata) {
-		addHeaders(connection, metadata, Utils.METADATA_PREFIX);
-	}
-
-	/**
-	 * Add the given headers to the HttpURLConnection with a prefix before the
-	 * keys.
-	 * 
-	 * @param connection
-	 *            The HttpURLConnection to which the headers will be added.
-	 * @param headers
-	 *            A Map of String to List of Strings representing the http
-	 *            headers to pass (can be null).
-	 * @param prefix
-	 *            The string to prepend to each key before adding it to the
-	 *            connection.
-	 */
-	private void addHeaders(HttpURLConnection connection, Map headers,
-			String prefix) {
-		if (headers != null) {
-			for (Iterator i = headers.keySet().iterator(); i.hasNext();) {
-				String key = (String) i.next();
-				for (Iterator j = ((List) headers.get(key)).iterator(); j
-						.hasNext();) {
-					String value = (String) j.next();
-					connection.addRequestProperty(prefix + key, value);
-				}
-			}
-		}
-	}
-
-	/**
-	 * Add the appropriate Authorization header to the HttpURLConnection.
-	 * 
-	 * @param connection
-	 *            The HttpURLConnection to which the header will be added.
-	 * @param method
-	 *            The HTTP method to use (GET, PUT, DELETE)
-	 * @param resource
-	 *            The resource name (bucketName + "/" + key).
-	 */
-	private void addAuthHeader(HttpURLConnection connection, String method,
-			String resource) {
-		if (connection.getRequestProperty("Date") == null) {
-			connection.setRequestProperty("Date", httpDate());
-		}
-		if (connection.getRequestProperty("Content-Type") == null) {
-			connection.setRequestProperty("Content-Type", "");
-		}
-
-		String canonicalString = Utils.makeCanonicalString(method, resource,
-				connection.getRequestProperties());
-		String encodedCanonical = Utils.encode(this.awsSecretAccessKey,
-				canonicalString, false);
-		connection.setRequestProperty("Authorization", "AWS "
-				+ this.awsAccessKeyId + ":" + encodedCanonical);
-	}
-
-	/**
-	 * Create a new URL object for a given resource.
-	 * 
-	 * @param resource
-	 *            The resource name (bucketName + "/" + key).
-	 */
-	private URL makeURL(String resource) throws MalformedURLException {
-		String protocol = this.isSecure ? "https" : "http";
-		return new URL(protocol, this.server, this.port, "/" + resource);
-	}
-
-	/**
-	 * Generate an rfc822 date for use in the Date HTTP header.
-	 */
-	public static String httpDate() {
-		final String DateFormat = "EEE, dd MMM yyyy HH:mm:ss ";
-		SimpleDateFormat format = new SimpleDateFormat(DateFormat, Locale.US);
-		format.setTimeZone(TimeZone.getTimeZone("GMT"));
-		return format.format(new Date()) + "GMT";
-	}
-}
+//  This software code is made available "AS IS" without warranties of any
+//  kind.  You may copy, display, modify and redistribute the software
+//  code either by itself or as incorporated into your code; provided that
+//  you do not remove any proprietary notices.  Your use of this software
+//  code is at your own risk and you waive any claim against Amazon
+//  Digital Services, Inc. or its affiliates with respect to your use of
+//  this software code. (c) 2006 Amazon Digital Services, Inc. or its
+//  affiliates.
+
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+// author:    Dominic Da Silva (dominic.dasilva@gmail.com)
+// version:   1.1
+// date:      04/09/2006
+
+package com.amazon.s3;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.silvasoftinc.s3.S3StreamObject;
+
+/**
+ * An interface into the S3 system. It is initially configured with
+ * authentication and connection parameters and exposes methods to access and
+ * manipulate S3 data.
+ */
+public class AWSAuthConnection {
+
+	/** Default number of milliseconds to wait for a connection */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+	/** Default number of milliseconds to wait for data from S3 */
+	public static final int DEFAULT_READ_TIMEOUT = 60000;
+
+	/** Smallest part of a multipart upload S3 accepts, except for the last */
+	public static final long MIN_PART_SIZE = 5 * 1024 * 1024;
+
+	/** Most parts a multipart upload may have */
+	public static final int MAX_PARTS = 10000;
+
+	/** Most keys a multi-object delete may name */
+	public static final int MAX_DELETE_KEYS = 1000;
+
+	/** Size of the buffer a part or range is copied through */
+	private static final int PART_BUFFER_SIZE = 64 * 1024;
+
+	/** Retries the parts of a multipart upload if there is no RetryPolicy */
+	private static final RetryPolicy PART_RETRY_POLICY = new RetryPolicy();
+
+	private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(
+					ZoneOffset.UTC);
+
+	/** The last Date header made by httpDate() */
+	private static volatile HttpDate lastHttpDate;
+
+	private RequestSigner signer;
+
+	private boolean isSecure;
+
+	private EndpointGroup endpoints;
+
+	private HttpTransport transport = URLConnectionTransport.getInstance();
+
+	private HedgePolicy hedgePolicy;
+
+	private RetryPolicy retryPolicy;
+
+	private RateLimiter rateLimiter;
+
+	private RequestListener requestListener;
+
+	private CircuitBreaker circuitBreaker;
+
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+	private int readTimeout = DEFAULT_READ_TIMEOUT;
+
+	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey) {
+		this(awsAccessKeyId, awsSecretAccessKey, true);
+	}
+
+	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey,
+			boolean isSecure) {
+		this(awsAccessKeyId, awsSecretAccessKey, isSecure, Utils.DEFAULT_HOST);
+	}
+
+	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey,
+			boolean isSecure, String server) {
+		this(awsAccessKeyId, awsSecretAccessKey, isSecure, server,
+				isSecure ? Utils.SECURE_PORT : Utils.INSECURE_PORT);
+	}
+
+	/**
+	 * Create a new interface to interact with S3 with the given credential and
+	 * connection parameters
+	 * 
+	 * @param awsAccessKeyId
+	 *            The your user key into AWS
+	 * @param awsSecretAccessKey
+	 *            The secret string used to generate signatures for
+	 *            authentication.
+	 * @param isSecure
+	 *            True if the data should be encrypted on the wire on the way to
+	 *            or from S3.
+	 * @param server
+	 *            Which host to connect to. Usually, this will be
+	 *            s3.amazonaws.com
+	 * @param port
+	 *            Which port to use.
+	 */
+	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey,
+			boolean isSecure, String server, int port) {
+		this.signer = new RequestSigner(awsAccessKeyId, awsSecretAccessKey);
+		this.isSecure = isSecure;
+		this.endpoints = new EndpointGroup(Collections
+				.singletonList(new Endpoint(server, port)));
+	}
+
+	/**
+	 * Create a new interface to S3 that spreads requests over several S3
+	 * compatible nodes, see EndpointGroup.
+	 * 
+	 * @param awsAccessKeyId
+	 *            The your user key into AWS
+	 * @param awsSecretAccessKey
+	 *            The secret string used to generate signatures for
+	 *            authentication.
+	 * @param isSecure
+	 *            True if the data should be encrypted on the wire on the way to
+	 *            or from S3.
+	 * @param endpoints
+	 *            The nodes to send requests to.
+	 */
+	public AWSAuthConnection(String awsAccessKeyId, String awsSecretAccessKey,
+			boolean isSecure, EndpointGroup endpoints) {
+		if (endpoints == null) {
+			throw new IllegalArgumentException("endpoints may not be null");
+		}
+		this.signer = new RequestSigner(awsAccessKeyId, awsSecretAccessKey);
+		this.isSecure = isSecure;
+		this.endpoints = endpoints;
+	}
+
+	/**
+	 * Returns the nodes requests are sent to.
+	 */
+	public EndpointGroup getEndpoints() {
+		return this.endpoints;
+	}
+
+	/**
+	 * Returns the HTTP stack requests are sent through.
+	 */
+	public HttpTransport getTransport() {
+		return this.transport;
+	}
+
+	/**
+	 * Sets the HTTP stack to send requests through. By default requests go
+	 * through the JDK's HttpURLConnection, which honours proxy settings and
+	 * follows redirects. HttpConnectionPool.getDefault() saves the handshakes
+	 * of new connections, but uses neither proxies nor redirects.
+	 * 
+	 * @param transport
+	 *            The transport to use [may not be null]
+	 */
+	public void setTransport(HttpTransport transport) {
+		if (transport == null) {
+			throw new IllegalArgumentException("transport may not be null");
+		}
+		this.transport = transport;
+	}
+
+	/**
+	 * Returns the policy used to hedge GET requests, or null if they aren't
+	 * hedged.
+	 */
+	public HedgePolicy getHedgePolicy() {
+		return this.hedgePolicy;
+	}
+
+	/**
+	 * Sets the policy used to hedge the GET requests of get() and
+	 * getStream(). Hedging is off by default.
+	 * 
+	 * @param hedgePolicy
+	 *            The policy to use, or null to send every request once.
+	 */
+	public void setHedgePolicy(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+	}
+
+	/**
+	 * Returns the policy failed requests are retried under, or null if they
+	 * aren't retried.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return this.retryPolicy;
+	}
+
+	/**
+	 * Sets the policy failed requests are retried under. Only requests that
+	 * can be sent again are retried; putStream() is not, its stream can only
+	 * be read once. A retried request has been sent by the time its Response
+	 * is returned. Requests are not retried by default.
+	 * 
+	 * @param retryPolicy
+	 *            The policy to use, or null to send every request once.
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Returns the limiter requests wait for, or null if they aren't limited.
+	 */
+	public RateLimiter getRateLimiter() {
+		return this.rateLimiter;
+	}
+
+	/**
+	 * Sets the limiter requests wait for before they are sent. Every attempt
+	 * of a retried or hedged request counts against the limit. Requests are
+	 * not limited by default.
+	 * 
+	 * @param rateLimiter
+	 *            The limiter to use, or null to send requests right away.
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * Returns the listener told about every request, or null if there is none.
+	 */
+	public RequestListener getRequestListener() {
+		return this.requestListener;
+	}
+
+	/**
+	 * Sets the listener told about the status and response time of every
+	 * request. With a listener set, requests are sent before they are
+	 * returned, even without a RetryPolicy.
+	 * 
+	 * @param requestListener
+	 *            The listener to tell, or null for none.
+	 */
+	public void setRequestListener(RequestListener requestListener) {
+		this.requestListener = requestListener;
+	}
+
+	/**
+	 * Returns the breaker that stops requests to a failing host, or null if
+	 * there is none.
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return this.circuitBreaker;
+	}
+
+	/**
+	 * Sets the breaker that stops requests to the server after repeated
+	 * failures. While its circuit is open, requests fail straight away with a
+	 * CircuitOpenException. With a breaker set, requests are sent before they
+	 * are returned, even without a RetryPolicy. There is no breaker by
+	 * default.
+	 * 
+	 * @param circuitBreaker
+	 *            The breaker to use, or null to always send requests.
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Returns the number of milliseconds to wait for a connection to S3.
+	 */
+	public int getConnectTimeout() {
+		return this.connectTimeout;
+	}
+
+	/**
+	 * Sets the number of milliseconds to wait for a connection to S3,
+	 * including the wait for a free pooled connection. The default is
+	 * DEFAULT_CONNECT_TIMEOUT.
+	 * 
+	 * @param connectTimeout
+	 *            The timeout, or 0 to wait forever.
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		if (connectTimeout < 0) {
+			throw new IllegalArgumentException("timeout may not be negative");
+		}
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Returns the number of milliseconds to wait for data from S3.
+	 */
+	public int getReadTimeout() {
+		return this.readTimeout;
+	}
+
+	/**
+	 * Sets the number of milliseconds to wait for the response to a request,
+	 * and for each further read of its body. The default is
+	 * DEFAULT_READ_TIMEOUT.
+	 * 
+	 * @param readTimeout
+	 *            The timeout, or 0 to wait forever.
+	 */
+	public void setReadTimeout(int readTimeout) {
+		if (readTimeout < 0) {
+			throw new IllegalArgumentException("timeout may not be negative");
+		}
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Returns the pool of keep-alive connections used by this connection, or
+	 * null if the transport isn't a connection pool.
+	 */
+	public HttpConnectionPool getConnectionPool() {
+		return this.transport instanceof HttpConnectionPool ? (HttpConnectionPool) this.transport
+				: null;
+	}
+
+	/**
+	 * Sets the pool of keep-alive connections to use.
+	 * 
+	 * @param connectionPool
+	 *            The pool to use, or null to open a plain JDK HttpURLConnection
+	 *            for every request.
+	 */
+	public void setConnectionPool(HttpConnectionPool connectionPool) {
+		setTransport(connectionPool != null ? connectionPool
+				: URLConnectionTransport.getInstance());
+	}
+
+	/**
+	 * Creates a new bucket.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to create.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 * @param metadata
+	 *            A Map of String to List of Strings representing the s3
+	 *            metadata for this bucket (can be null).
+	 */
+	public Response createBucket(String bucket, Map headers)
+			throws MalformedURLException, IOException {
+		return new Response(execute("PUT", bucket, endpoint -> makeRequest(
+				endpoint, "PUT", bucket, headers)));
+	}
+
+	/**
+	 * Lists the contents of a bucket.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to create.
+	 * @param prefix
+	 *            All returned keys will start with this string (can be null).
+	 * @param marker
+	 *            All returned keys will be lexographically greater than this
+	 *            string (can be null).
+	 * @param maxKeys
+	 *            The maximum number of keys to return (can be null).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public ListBucketResponse listBucket(String bucket, String prefix,
+			String marker, Integer maxKeys, Map headers)
+			throws MalformedURLException, IOException {
+		return listBucket(bucket, prefix, marker, maxKeys, null, headers);
+	}
+
+	/**
+	 * Lists the contents of a bucket, rolling up the keys that contain the
+	 * delimiter after the prefix into the response's commonPrefixes.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to list.
+	 * @param prefix
+	 *            All returned keys will start with this string (can be null).
+	 * @param marker
+	 *            All returned keys will be lexographically greater than this
+	 *            string (can be null).
+	 * @param maxKeys
+	 *            The maximum number of keys and common prefixes to return
+	 *            (can be null).
+	 * @param delimiter
+	 *            Keys containing this string after the prefix are rolled up
+	 *            to the prefix up to and including it (can be null).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public ListBucketResponse listBucket(String bucket, String prefix,
+			String marker, Integer maxKeys, String delimiter, Map headers)
+			throws MalformedURLException, IOException {
+		String path = Utils.pathForListOptions(bucket, prefix, marker,
+				maxKeys, delimiter);
+		return new ListBucketResponse(execute("GET", path,
+				endpoint -> makeRequest(endpoint, "GET", path, headers)));
+	}
+
+	/**
+	 * Lists the contents of a bucket page by page, passing each entry to the
+	 * visitor as it is parsed. Nothing is kept, so a bucket of any size is
+	 * listed in constant memory. Listing stops after the last page, the
+	 * first page that can't be listed, or when the visitor throws.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to list.
+	 * @param prefix
+	 *            All returned keys will start with this string (can be null).
+	 * @param limit
+	 *            The most entries to visit, or 0 to visit every entry.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 * @param visitor
+	 *            Receives the entries in key order.
+	 * @return The last page listed. If it couldn't be listed, its entries
+	 *         are null.
+	 */
+	public ListBucketResponse visitBucket(String bucket, String prefix,
+			int limit, Map headers, ListEntryVisitor visitor)
+			throws MalformedURLException, IOException {
+		String marker = null;
+		int remaining = limit;
+		while (true) {
+			Integer maxKeys = remaining > 0 ? Integer.valueOf(remaining) : null;
+			String path = Utils.pathForListOptions(bucket, prefix, marker,
+					maxKeys);
+			ListBucketResponse page = new ListBucketResponse(execute("GET",
+					path, endpoint -> makeRequest(endpoint, "GET", path,
+							headers)),
+					visitor);
+			if (page.entries == null || !page.isTruncated
+					|| page.entryCount == 0) {
+				return page;
+			}
+			if (limit > 0) {
+				remaining -= page.entryCount;
+				if (remaining <= 0) {
+					return page;
+				}
+			}
+			marker = page.nextMarker != null ? page.nextMarker
+					: page.lastKey;
+		}
+	}
+
+	/**
+	 * Deletes a bucket.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to delete.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public Response deleteBucket(String bucket, Map headers)
+			throws MalformedURLException, IOException {
+		return new Response(execute("DELETE", bucket, endpoint -> makeRequest(
+				endpoint, "DELETE", bucket, headers)));
+	}
+
+	/**
+	 * Writes an object to S3.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to which the object will be added.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param object
+	 *            An S3Object containing the data to write.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public Response put(String bucket, String key, S3Object object, Map headers)
+			throws MalformedURLException, IOException {
+
+		String resource = Utils.resourcePath(bucket, key);
+
+		return new Response(execute("PUT", resource, endpoint -> {
+			HttpURLConnection request = makeRequest(endpoint, "PUT", resource,
+					headers, object);
+
+			request.setDoOutput(true);
+			request.getOutputStream().write(
+					object.data == null ? new byte[] {} : object.data);
+			return request;
+		}));
+	}
+
+	/**
+	 * Writes an object to S3.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to which the object will be added.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param object
+	 *            An S3StreamObject containing the data stream to write.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public Response putStream(String bucket, String key, S3StreamObject object,
+			Map headers) throws MalformedURLException, IOException {
+
+		final String resource = Utils.resourcePath(bucket, key);
+
+		// the stream can only be read once, so this is never retried
+		return new Response(send("PUT", resource, endpoint -> {
+			HttpURLConnection request = makeStreamRequest(endpoint, "PUT", resource,
+					headers, object);
+
+			request.setDoOutput(true);
+			if (object.length != 0) {
+				request.setFixedLengthStreamingMode(object.length);
+			}
+
+			byte[] buf = new byte[1024];
+			int bytesRead = 0;
+
+			OutputStream out = request.getOutputStream();
+			while ((bytesRead = object.stream.read(buf)) > 0) {
+				out.write(buf, 0, bytesRead);
+			}
+			out.close();
+			return request;
+		}));
+	}
+
+	/**
+	 * Writes a file to S3 with a multipart upload: the file is split into
+	 * parts that are uploaded concurrently, each retried on its own, and then
+	 * assembled into one object. This stores files larger than a single PUT
+	 * allows (5 GB), and a failed part doesn't send the whole file again. If
+	 * the upload can't be completed it is aborted, so its parts don't linger.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to which the object will be added.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param file
+	 *            The file to upload.
+	 * @param partSize
+	 *            The size of each part but the last. It is raised to
+	 *            MIN_PART_SIZE, or as far as needed to stay within MAX_PARTS.
+	 * @param concurrency
+	 *            The number of parts to upload at once.
+	 * @param metadata
+	 *            A Map of String to List of Strings representing the s3
+	 *            metadata for the object (can be null).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass when the upload is started (can be null).
+	 * @throws IOException
+	 *             If the upload failed.
+	 */
+	public CompleteMultipartUploadResponse putFile(String bucket, String key,
+			File file, long partSize, int concurrency, Map metadata,
+			Map headers) throws MalformedURLException, IOException {
+		return putFile(bucket, key, file, partSize, concurrency, metadata,
+				headers, null);
+	}
+
+	/**
+	 * Writes a file to S3 with a multipart upload that can be resumed. The
+	 * upload ID and the parts uploaded are recorded in the journal, and a
+	 * journal from an earlier run that didn't finish picks its upload up
+	 * again, sending only the missing parts. An upload that fails for a
+	 * reason that may pass is left open for the next run instead of being
+	 * aborted. A recorded upload S3 no longer knows of is started over in
+	 * the same call, as is one recorded with a different part size, after
+	 * aborting it.
+	 * 
+	 * @param journal
+	 *            The journal of this upload (can be null to not resume). It
+	 *            is deleted once the upload is complete.
+	 * @see #putFile(String, String, File, long, int, Map, Map)
+	 */
+	public CompleteMultipartUploadResponse putFile(String bucket, String key,
+			File file, long partSize, int concurrency, Map metadata,
+			Map headers, TransferJournal journal) throws MalformedURLException,
+			IOException {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be >= 1");
+		}
+		long length = file.length();
+		partSize = Math.max(partSize, MIN_PART_SIZE);
+		partSize = Math.max(partSize, (length + MAX_PARTS - 1) / MAX_PARTS);
+		int parts = (int) Math.max(1, (length + partSize - 1) / partSize);
+
+		String uploadId = null;
+		if (journal != null) {
+			uploadId = journal.get("upload");
+			if (uploadId != null
+					&& !String.valueOf(partSize).equals(journal.get("partsize"))) {
+				// its parts don't fit this part size, so start over
+				Response aborted = abortMultipartUpload(bucket, key, uploadId,
+						null);
+				int status = aborted.connection.getResponseCode();
+				if (status >= 400 && status != 404) {
+					throw new IOException("Could not abort the earlier upload of "
+							+ key + ": " + status + " "
+							+ aborted.connection.getResponseMessage());
+				}
+				journal.reset();
+				uploadId = null;
+			}
+		}
+		if (uploadId == null) {
+			uploadId = startUpload(bucket, key, partSize, metadata, headers,
+					journal);
+		} else {
+			try {
+				return finishUpload(bucket, key, uploadId, file, length,
+						partSize, parts, concurrency, journal);
+			} catch (FileNotFoundException e) {
+				// S3 no longer knows of the recorded upload, and finishUpload
+				// has reset the journal, so start over
+				uploadId = startUpload(bucket, key, partSize, metadata,
+						headers, journal);
+			}
+		}
+		return finishUpload(bucket, key, uploadId, file, length, partSize,
+				parts, concurrency, journal);
+	}
+
+	/**
+	 * Starts a multipart upload, and records it in the journal if there is
+	 * one.
+	 */
+	private String startUpload(String bucket, String key, long partSize,
+			Map metadata, Map headers, TransferJournal journal)
+			throws IOException {
+		InitiateMultipartUploadResponse initiated = initiateMultipartUpload(
+				bucket, key, metadata, headers);
+		if (initiated.uploadId == null) {
+			throw new IOException("Could not start the upload of " + key
+					+ ": " + initiated.connection.getResponseCode() + " "
+					+ initiated.connection.getResponseMessage());
+		}
+		if (journal != null) {
+			journal.record("partsize", String.valueOf(partSize));
+			journal.record("upload", initiated.uploadId);
+		}
+		return initiated.uploadId;
+	}
+
+	/**
+	 * Uploads the missing parts of a multipart upload and completes it. An
+	 * upload that fails for good is aborted, and its journal reset; a
+	 * FileNotFoundException means S3 doesn't know of the upload.
+	 */
+	private CompleteMultipartUploadResponse finishUpload(String bucket,
+			String key, String uploadId, File file, long length, long partSize,
+			int parts, int concurrency, TransferJournal journal)
+			throws IOException {
+		// a journal keeps a failed upload open unless S3 turned it down
+		boolean abort = journal == null;
+		boolean completed = false;
+		try {
+			String[] etags = uploadParts(bucket, key, uploadId, file, length,
+					partSize, parts, concurrency, journal);
+			CompleteMultipartUploadResponse response = completeMultipartUpload(
+					bucket, key, uploadId, Arrays.asList(etags), null);
+			if (response.errorCode != null) {
+				throw new IOException("Could not complete the upload of " + key
+						+ ": " + response.errorCode + " "
+						+ response.errorMessage);
+			}
+			if (response.connection.getResponseCode() == 404) {
+				throw new FileNotFoundException("No upload " + uploadId
+						+ " of " + key);
+			}
+			if (response.connection.getResponseCode() >= 400) {
+				abort = abort || response.connection.getResponseCode() < 500;
+				throw new IOException("Could not complete the upload of " + key
+						+ ": " + response.connection.getResponseCode() + " "
+						+ response.connection.getResponseMessage());
+			}
+			completed = true;
+			if (journal != null) {
+				journal.complete();
+			}
+			return response;
+		} catch (FileNotFoundException e) {
+			// the upload is gone, or was never there
+			abort = true;
+			throw e;
+		} finally {
+			if (!completed && abort) {
+				if (journal != null) {
+					journal.reset();
+				}
+				try {
+					abortMultipartUpload(bucket, key, uploadId, null);
+				} catch (IOException e) {
+					// S3 keeps the parts until the upload is aborted later
+				}
+			} else if (journal != null) {
+				journal.close();
+			}
+		}
+	}
+
+	/**
+	 * Uploads the parts of a file, returns their ETags in order. Parts the
+	 * journal has recorded are not sent again.
+	 */
+	private String[] uploadParts(final String bucket, final String key,
+			final String uploadId, final File file, final long length,
+			final long partSize, int parts, int concurrency,
+			final TransferJournal journal) throws IOException {
+		final String[] etags = new String[parts];
+		if (journal != null) {
+			for (String part : journal.getAll("part")) {
+				int space = part.indexOf(' ');
+				int partNumber = Integer.parseInt(part.substring(0, space));
+				if (partNumber >= 1 && partNumber <= parts) {
+					etags[partNumber - 1] = part.substring(space + 1);
+				}
+			}
+		}
+		runParts(parts, concurrency, key, i -> {
+			if (etags[i] != null) {
+				return;
+			}
+			int partNumber = i + 1;
+			long offset = i * partSize;
+			Response response = uploadPart(bucket, key, uploadId, partNumber,
+					file, offset, Math.min(partSize, length - offset), null);
+			HttpURLConnection connection = response.connection;
+			if (connection.getResponseCode() == 404) {
+				throw new FileNotFoundException("No upload " + uploadId
+						+ " of " + key);
+			}
+			if (connection.getResponseCode() >= 300) {
+				throw new IOException("Could not upload part " + partNumber
+						+ " of " + key + ": " + connection.getResponseCode()
+						+ " " + connection.getResponseMessage());
+			}
+			etags[i] = connection.getHeaderField("ETag");
+			if (journal != null) {
+				journal.record("part", partNumber + " " + etags[i]);
+			}
+		});
+		return etags;
+	}
+
+	/**
+	 * Transfers one part of a multipart upload or download.
+	 */
+	private interface Part {
+		void transfer(int index) throws IOException;
+	}
+
+	/**
+	 * Transfers the given number of parts, up to concurrency of them at once
+	 * on virtual threads. No more parts are started once one has failed, and
+	 * the first failure is thrown after the parts under way have finished.
+	 */
+	private static void runParts(int parts, int concurrency, String key,
+			final Part part) throws IOException {
+		final Semaphore permits = new Semaphore(concurrency);
+		final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		try (ExecutorService executor = Executors
+				.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < parts && failure.get() == null; i++) {
+				final int index = i;
+				try {
+					permits.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted transferring "
+							+ key);
+				}
+				executor.execute(() -> {
+					try {
+						part.transfer(index);
+					} catch (IOException e) {
+						failure.compareAndSet(null, e);
+					} catch (RuntimeException e) {
+						failure.compareAndSet(null, new IOException(e
+								.toString(), e));
+					} finally {
+						permits.release();
+					}
+				});
+			}
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	/**
+	 * Starts a multipart upload.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to which the object will be added.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param metadata
+	 *            A Map of String to List of Strings representing the s3
+	 *            metadata for the object (can be null).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public InitiateMultipartUploadResponse initiateMultipartUpload(
+			String bucket, String key, Map metadata, Map headers)
+			throws MalformedURLException, IOException {
+		final String resource = Utils.resourcePath(bucket, key) + "?uploads";
+		final S3Object object = new S3Object(new byte[0], metadata);
+		return new InitiateMultipartUploadResponse(execute("POST", resource,
+				endpoint -> {
+			HttpURLConnection request = makeRequest(endpoint, "POST", resource,
+					headers, object);
+
+			request.setDoOutput(true);
+			request.getOutputStream().close();
+			return request;
+		}));
+	}
+
+	/**
+	 * Uploads one part of a multipart upload from a file. The part is
+	 * retried under the RetryPolicy, or a default one if none is set.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to which the object will be added.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param uploadId
+	 *            The ID the upload was started with.
+	 * @param partNumber
+	 *            The number of the part, from 1 to MAX_PARTS.
+	 * @param file
+	 *            The file to read the part from.
+	 * @param offset
+	 *            Where the part starts in the file.
+	 * @param length
+	 *            The length of the part.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public Response uploadPart(String bucket, String key, String uploadId,
+			int partNumber, File file, long offset, long length, Map headers)
+			throws MalformedURLException, IOException {
+		final String resource = Utils.resourcePath(bucket, key)
+				+ "?partNumber=" + partNumber + "&uploadId="
+				+ Utils.urlencode(uploadId);
+		RetryPolicy policy = this.retryPolicy;
+		return new Response(execute("PUT", resource, endpoint -> {
+			HttpURLConnection request = makeRequest(endpoint, "PUT", resource,
+					headers);
+
+			request.setDoOutput(true);
+			request.setFixedLengthStreamingMode(length);
+			try (FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.READ)) {
+				// positional reads rather than transferTo, which holds a
+				// monitor and pins a virtual thread while the socket blocks
+				OutputStream out = request.getOutputStream();
+				ByteBuffer buf = ByteBuffer.allocate(PART_BUFFER_SIZE);
+				long written = 0;
+				while (written < length) {
+					buf.clear();
+					buf.limit((int) Math.min(buf.capacity(), length - written));
+					int n = channel.read(buf, offset + written);
+					if (n <= 0) {
+						throw new IOException(file + " changed during upload");
+					}
+					out.write(buf.array(), 0, n);
+					written += n;
+				}
+				out.close();
+			}
+			return request;
+		}, policy != null ? policy : PART_RETRY_POLICY));
+	}
+
+	/**
+	 * Assembles the uploaded parts into the object. A retryable error in a
+	 * 200 response is retried under the RetryPolicy like an error status.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to which the object will be added.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param uploadId
+	 *            The ID the upload was started with.
+	 * @param etags
+	 *            The ETags of the parts, in order of their part numbers
+	 *            starting at 1.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public CompleteMultipartUploadResponse completeMultipartUpload(
+			String bucket, String key, String uploadId, List etags,
+			Map headers) throws MalformedURLException, IOException {
+		final String resource = Utils.resourcePath(bucket, key) + "?uploadId="
+				+ Utils.urlencode(uploadId);
+		StringBuffer xml = new StringBuffer("<CompleteMultipartUpload>");
+		for (int i = 0; i < etags.size(); i++) {
+			xml.append("<Part><PartNumber>").append(i + 1).append(
+					"</PartNumber><ETag>").append(etags.get(i)).append(
+					"</ETag></Part>");
+		}
+		xml.append("</CompleteMultipartUpload>");
+		final byte[] body = xml.toString().getBytes("UTF-8");
+
+		RetryPolicy policy = this.retryPolicy;
+		long delay = 0;
+		for (int attempt = 1;; attempt++) {
+			CompleteMultipartUploadResponse response = new CompleteMultipartUploadResponse(
+					execute("POST", resource, endpoint -> {
+						HttpURLConnection request = makeRequest(endpoint,
+								"POST", resource, headers);
+
+						request.setDoOutput(true);
+						request.getOutputStream().write(body);
+						return request;
+					}));
+			if (response.errorCode == null || policy == null
+					|| !policy.isRetryable(response.errorCode)
+					|| !policy.allowRetry(attempt)) {
+				return response;
+			}
+			delay = policy.nextDelay(delay);
+			policy.backoff(delay);
+		}
+	}
+
+	/**
+	 * Aborts a multipart upload and deletes the parts uploaded so far.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket the object was to be added to.
+	 * @param key
+	 *            The name of the key.
+	 * @param uploadId
+	 *            The ID the upload was started with.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public Response abortMultipartUpload(String bucket, String key,
+			String uploadId, Map headers) throws MalformedURLException,
+			IOException {
+		final String resource = Utils.resourcePath(bucket, key) + "?uploadId="
+				+ Utils.urlencode(uploadId);
+		return new Response(execute("DELETE", resource,
+				endpoint -> makeRequest(endpoint, "DELETE", resource, headers)));
+	}
+
+	/**
+	 * Copies an object within S3, without its bytes passing through the
+	 * client. Both buckets must be readable and writable with this
+	 * connection's credentials and reachable through its endpoints. An error
+	 * S3 reports in a 200 response is retried under the RetryPolicy like an
+	 * error status. S3 copies objects of up to 5 GB this way.
+	 * 
+	 * @param sourceBucket
+	 *            The name of the bucket to copy from.
+	 * @param sourceKey
+	 *            The name of the key to copy.
+	 * @param bucket
+	 *            The name of the bucket to copy to.
+	 * @param key
+	 *            The name of the key to copy to.
+	 * @param metadata
+	 *            A Map of String to List of Strings representing the s3
+	 *            metadata for the new object, or null to keep the metadata
+	 *            of the source.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public CopyObjectResponse copy(String sourceBucket, String sourceKey,
+			String bucket, String key, Map metadata, Map headers)
+			throws MalformedURLException, IOException {
+		final String resource = Utils.resourcePath(bucket, key);
+		final S3Object object = new S3Object(new byte[0], metadata);
+		final Map copyHeaders = withHeader(withHeader(headers,
+				"x-amz-copy-source", "/"
+						+ Utils.resourcePath(sourceBucket, sourceKey)),
+				"x-amz-metadata-directive", metadata == null ? "COPY"
+						: "REPLACE");
+
+		RetryPolicy policy = this.retryPolicy;
+		long delay = 0;
+		for (int attempt = 1;; attempt++) {
+			CopyObjectResponse response = new CopyObjectResponse(execute("PUT",
+					resource, endpoint -> {
+				HttpURLConnection request = makeRequest(endpoint, "PUT",
+						resource, copyHeaders, object);
+
+				request.setDoOutput(true);
+				request.getOutputStream().close();
+				return request;
+			}));
+			// execute() has already retried error responses
+			if (response.errorCode == null || policy == null
+					|| response.connection.getResponseCode() >= 400
+					|| !policy.isRetryable(response.errorCode)
+					|| !policy.allowRetry(attempt)) {
+				return response;
+			}
+			delay = policy.nextDelay(delay);
+			policy.backoff(delay);
+		}
+	}
+
+	/**
+	 * Reads an object from S3.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public GetResponse get(String bucket, String key, Map headers)
+			throws MalformedURLException, IOException {
+
+		String resource = Utils.resourcePath(bucket, key);
+		return new GetResponse(execute("GET", resource, getRequest(resource,
+				headers)));
+	}
+
+	/**
+	 * Reads the headers and metadata of an object, or checks that a bucket
+	 * exists, without transferring any data.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use, or null for the bucket itself.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public HeadResponse head(String bucket, String key, Map headers)
+			throws MalformedURLException, IOException {
+		String resource = Utils.resourcePath(bucket, key);
+		return new HeadResponse(execute("HEAD", resource,
+				endpoint -> makeRequest(endpoint, "HEAD", resource, headers)));
+	}
+
+	/**
+	 * Reads an object from S3 using streaming.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public GetStreamResponse getStream(String bucket, String key, Map headers)
+			throws MalformedURLException, IOException {
+
+		String resource = Utils.resourcePath(bucket, key);
+		return new GetStreamResponse(execute("GET", resource, getRequest(
+				resource, headers)));
+	}
+
+	/**
+	 * Reads a range of the bytes of an object from S3 using streaming. S3
+	 * answers 206 with a Content-Range header, or 200 with the whole object
+	 * if it ignored the range.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param first
+	 *            The offset of the first byte to read.
+	 * @param last
+	 *            The offset of the last byte to read, or -1 to read to the end
+	 *            of the object.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public GetStreamResponse getRange(String bucket, String key, long first,
+			long last, Map headers) throws MalformedURLException, IOException {
+		return getStream(bucket, key, withHeader(headers, "Range", "bytes="
+				+ first + "-" + (last < 0 ? "" : String.valueOf(last))));
+	}
+
+	/**
+	 * Reads an object from S3 into a file, fetching ranges of it over
+	 * several connections at once. The file is sized up front and each range
+	 * is written at its own offset. Every range must come from the same
+	 * version of the object (the later ones are sent with If-Match), a range
+	 * cut short is resumed under the RetryPolicy, and the size of the file
+	 * and, unless the object was uploaded in parts, its MD5 are checked
+	 * against the object's.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param file
+	 *            The file to write the object to, it is replaced.
+	 * @param rangeSize
+	 *            The number of bytes to fetch with each request.
+	 * @param concurrency
+	 *            The most ranges to fetch at once.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 * @return The response to the request for the first range, its status is
+	 *         400 or more if the object could not be read.
+	 * @throws IOException
+	 *             If the download failed, the file is deleted.
+	 */
+	public Response getFile(String bucket, String key, File file,
+			long rangeSize, int concurrency, Map headers)
+			throws MalformedURLException, IOException {
+		return getFile(bucket, key, file, rangeSize, concurrency, headers, null);
+	}
+
+	/**
+	 * Reads an object from S3 into a file with a download that can be
+	 * resumed. The object's ETag and the ranges written are recorded in the
+	 * journal, and a journal from an earlier run that didn't finish fetches
+	 * only the missing ranges, as long as the object and the file are still
+	 * the same. A download that fails for a reason that may pass keeps the
+	 * file for the next run.
+	 * 
+	 * @param journal
+	 *            The journal of this download (can be null to not resume). It
+	 *            is deleted once the download is complete.
+	 * @see #getFile(String, String, File, long, int, Map)
+	 */
+	public Response getFile(final String bucket, final String key,
+			File file, final long rangeSize, int concurrency,
+			final Map headers, final TransferJournal journal)
+			throws MalformedURLException, IOException {
+		if (rangeSize < 1 || concurrency < 1) {
+			throw new IllegalArgumentException(
+					"rangeSize and concurrency must be >= 1");
+		}
+		String resumed = null;
+		if (journal != null) {
+			resumed = journal.get("etag");
+			if (resumed != null
+					&& (!String.valueOf(rangeSize).equals(journal.get("rangesize"))
+							|| !String.valueOf(file.length()).equals(journal.get("length")))) {
+				journal.reset();
+				resumed = null;
+			}
+		}
+
+		GetStreamResponse response = getRange(bucket, key, 0, rangeSize - 1,
+				resumed == null ? headers : withHeader(headers, "If-Match",
+						resumed));
+		int status = response.connection.getResponseCode();
+		if (status == 412 && resumed != null) {
+			// the object changed since the last run
+			response.connection.disconnect();
+			journal.reset();
+			resumed = null;
+			response = getRange(bucket, key, 0, rangeSize - 1, headers);
+			status = response.connection.getResponseCode();
+		}
+		if (status == 416) {
+			// an empty object has no bytes to ask for
+			response.connection.disconnect();
+			response = getStream(bucket, key, headers);
+			status = response.connection.getResponseCode();
+		}
+		if (status >= 300) {
+			return response;
+		}
+
+		HttpURLConnection connection = response.connection;
+		final String etag = connection.getHeaderField("ETag");
+		long total;
+		long firstLength;
+		if (status == 206) {
+			total = parseContentRange(connection.getHeaderField("Content-Range"), 0);
+			if (total < 0) {
+				connection.disconnect();
+				throw new ProtocolException("Bad Content-Range for " + key
+						+ ": " + connection.getHeaderField("Content-Range"));
+			}
+			firstLength = Math.min(rangeSize, total);
+		} else {
+			total = connection.getContentLengthLong();
+			firstLength = total;
+		}
+
+		boolean done = false;
+		boolean keep = false;
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			out.setLength(Math.max(total, 0));
+			final FileChannel channel = out.getChannel();
+			InputStream in = response.object.stream;
+			long written;
+			try {
+				written = copyRange(in, channel, 0, firstLength);
+			} finally {
+				in.close();
+			}
+			if (total < 0) {
+				// no length to divide up, the whole object came at once
+				total = written;
+			} else if (written < firstLength) {
+				throw new EOFException("Connection closed after " + written
+						+ " of " + firstLength + " bytes of " + key);
+			}
+
+			final long start = written;
+			int ranges = (int) ((total - start + rangeSize - 1) / rangeSize);
+			final long length = total;
+			if (journal != null && ranges > 0 && resumed == null) {
+				journal.record("rangesize", String.valueOf(rangeSize));
+				journal.record("length", String.valueOf(length));
+				journal.record("etag", etag);
+			}
+			try {
+				runParts(ranges, concurrency, key, i -> {
+					long offset = start + i * rangeSize;
+					if (journal != null
+							&& journal.contains("range", String.valueOf(offset))) {
+						return;
+					}
+					getFileRange(bucket, key, etag, channel, offset, Math.min(
+							offset + rangeSize, length), headers);
+					if (journal != null) {
+						journal.record("range", String.valueOf(offset));
+					}
+				});
+			} catch (ProtocolException e) {
+				throw e;
+			} catch (IOException e) {
+				keep = journal != null;
+				throw e;
+			}
+
+			if (channel.size() != total) {
+				throw new IOException("Got " + channel.size() + " bytes of "
+						+ key + ", expected " + total);
+			}
+			if (isMD5ETag(connection)) {
+				verifyMD5(channel, etag, key);
+			}
+			done = true;
+			if (journal != null) {
+				journal.complete();
+			}
+			return response;
+		} finally {
+			if (keep) {
+				journal.close();
+			} else if (!done) {
+				if (journal != null) {
+					journal.reset();
+				}
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Fetches the bytes of an object from offset up to end into the file.
+	 * A range cut short is asked for again from where it stopped.
+	 */
+	private void getFileRange(String bucket, String key, String etag,
+			FileChannel channel, long offset, long end, Map headers)
+			throws IOException {
+		Map matchHeaders = etag == null ? headers : withHeader(headers,
+				"If-Match", etag);
+		RetryPolicy policy = this.retryPolicy;
+		if (policy == null) {
+			policy = PART_RETRY_POLICY;
+		}
+
+		long position = offset;
+		long delay = 0;
+		for (int attempt = 1;; attempt++) {
+			try {
+				GetStreamResponse response = getRange(bucket, key, position,
+						end - 1, matchHeaders);
+				HttpURLConnection connection = response.connection;
+				int status = connection.getResponseCode();
+				if (status == 412) {
+					throw new ProtocolException(key
+							+ " changed during the download");
+				}
+				if (status != 206
+						|| parseContentRange(connection
+								.getHeaderField("Content-Range"), position) < 0) {
+					throw new ProtocolException("Could not get bytes "
+							+ position + "-" + (end - 1) + " of " + key + ": "
+							+ status + " " + connection.getResponseMessage());
+				}
+				if (etag != null
+						&& !etag.equals(connection.getHeaderField("ETag"))) {
+					throw new ProtocolException(key
+							+ " changed during the download");
+				}
+				InputStream in = response.object.stream;
+				try {
+					// count what arrived so a retry asks only for the rest
+					ByteBuffer buf = ByteBuffer.allocate(PART_BUFFER_SIZE);
+					while (position < end) {
+						int n = in.read(buf.array(), 0, (int) Math.min(buf
+								.capacity(), end - position));
+						if (n < 0) {
+							throw new EOFException("Connection closed at byte "
+									+ position + " of " + key);
+						}
+						buf.clear().limit(n);
+						while (buf.hasRemaining()) {
+							position += channel.write(buf, position);
+						}
+					}
+				} finally {
+					in.close();
+				}
+				policy.recordSuccess();
+				return;
+			} catch (IOException e) {
+				if (!policy.isRetryable(e) || !policy.allowRetry(attempt)) {
+					throw e;
+				}
+			}
+			delay = policy.nextDelay(delay);
+			policy.backoff(delay);
+		}
+	}
+
+	/**
+	 * Copies up to length bytes from the stream to the file at the given
+	 * position, returns the number copied.
+	 */
+	private static long copyRange(InputStream in, FileChannel channel,
+			long position, long length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(PART_BUFFER_SIZE);
+		long copied = 0;
+		while (length < 0 || copied < length) {
+			int max = buf.capacity();
+			if (length >= 0) {
+				max = (int) Math.min(max, length - copied);
+			}
+			int n = in.read(buf.array(), 0, max);
+			if (n < 0) {
+				break;
+			}
+			buf.clear().limit(n);
+			while (buf.hasRemaining()) {
+				copied += channel.write(buf, position + copied);
+			}
+		}
+		return copied;
+	}
+
+	/**
+	 * Reads the total length of the object from a Content-Range header such
+	 * as "bytes 0-99/1234", or returns -1 if it is missing or does not start
+	 * at the given offset.
+	 */
+	private static long parseContentRange(String contentRange, long first) {
+		if (contentRange == null || !contentRange.startsWith("bytes ")) {
+			return -1;
+		}
+		int dash = contentRange.indexOf('-');
+		int slash = contentRange.indexOf('/');
+		if (dash < 0 || slash < dash) {
+			return -1;
+		}
+		try {
+			if (Long.parseLong(contentRange.substring(6, dash).trim()) != first) {
+				return -1;
+			}
+			return Long.parseLong(contentRange.substring(slash + 1).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns a copy of the headers with one more header set.
+	 */
+	private static Map withHeader(Map headers, String name, String value) {
+		Map copy = headers == null ? new LinkedHashMap() : new LinkedHashMap(
+				headers);
+		copy.put(name, Collections.singletonList(value));
+		return copy;
+	}
+
+	/**
+	 * Tells whether the ETag of an object can be the MD5 of its bytes. It
+	 * isn't for an object encrypted with a KMS key or a customer-provided
+	 * key, even though it looks like one.
+	 */
+	private static boolean isMD5ETag(HttpURLConnection connection) {
+		String encryption = connection
+				.getHeaderField("x-amz-server-side-encryption");
+		if (encryption != null && encryption.startsWith("aws:kms")) {
+			return false;
+		}
+		return connection
+				.getHeaderField("x-amz-server-side-encryption-customer-algorithm") == null;
+	}
+
+	/**
+	 * Checks the MD5 of the file against the ETag of the object. The ETag of
+	 * an object uploaded in parts is not the MD5 of its bytes and is skipped.
+	 * 
+	 * @see #isMD5ETag(HttpURLConnection)
+	 */
+	private static void verifyMD5(FileChannel channel, String etag, String key)
+			throws IOException {
+		if (etag == null) {
+			return;
+		}
+		String md5 = etag.replace("\"", "");
+		if (md5.length() != 32 || md5.indexOf('-') >= 0) {
+			return;
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			return;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(PART_BUFFER_SIZE);
+		long position = 0;
+		int n;
+		while ((n = channel.read(buf, position)) > 0) {
+			buf.flip();
+			digest.update(buf);
+			buf.clear();
+			position += n;
+		}
+		if (!md5.equalsIgnoreCase(Utils.toHex(digest.digest()))) {
+			throw new IOException("The MD5 of " + key
+					+ " does not match its ETag " + etag);
+		}
+	}
+
+	/**
+	 * Reads a BitTorrent file (.torrent) for an object from S3.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public GetResponse getTorrent(String bucket, String key, Map headers)
+			throws MalformedURLException, IOException {
+
+		String resource = Utils.resourcePath(bucket, key) + "?torrent";
+		return new GetResponse(execute("GET", resource,
+				endpoint -> makeRequest(endpoint, "GET", resource, headers)));
+	}
+
+	/**
+	 * Deletes an object from S3.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public Response delete(String bucket, String key, Map headers)
+			throws MalformedURLException, IOException {
+		String resource = Utils.resourcePath(bucket, key);
+		return new Response(execute("DELETE", resource,
+				endpoint -> makeRequest(endpoint, "DELETE", resource, headers)));
+	}
+
+	/**
+	 * Deletes up to MAX_DELETE_KEYS objects from a bucket in one request. The
+	 * XML request body is written straight to the connection, once to compute
+	 * its Content-MD5 and once for each attempt. Keys that could not be
+	 * deleted are listed in the response's failures.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the objects live.
+	 * @param keys
+	 *            The names of the keys to delete.
+	 * @param quiet
+	 *            If true, S3 only reports the keys it could not delete.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public DeleteObjectsResponse deleteObjects(String bucket, List keys,
+			boolean quiet, Map headers) throws MalformedURLException,
+			IOException {
+		if (keys.size() > MAX_DELETE_KEYS) {
+			throw new IllegalArgumentException("At most " + MAX_DELETE_KEYS
+					+ " keys can be deleted in one request, not "
+					+ keys.size());
+		}
+		final String resource = bucket + "?delete";
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("MD5 is not available: " + e.getMessage());
+		}
+		final long[] length = new long[1];
+		OutputStream counter = new OutputStream() {
+			public void write(int b) {
+				length[0]++;
+			}
+
+			public void write(byte[] b, int off, int len) {
+				length[0] += len;
+			}
+		};
+		writeDeleteXml(new DigestOutputStream(counter, digest), keys, quiet);
+		final Map deleteHeaders = withHeader(headers, "Content-MD5", Base64
+				.getEncoder().encodeToString(digest.digest()));
+
+		return new DeleteObjectsResponse(execute("POST", resource,
+				endpoint -> {
+			HttpURLConnection request = makeRequest(endpoint, "POST",
+					resource, deleteHeaders);
+
+			request.setDoOutput(true);
+			request.setFixedLengthStreamingMode(length[0]);
+			OutputStream out = request.getOutputStream();
+			writeDeleteXml(out, keys, quiet);
+			out.close();
+			return request;
+		}));
+	}
+
+	/**
+	 * Write the Delete document of a multi-object delete request.
+	 */
+	private static void writeDeleteXml(OutputStream out, List keys,
+			boolean quiet) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+				"UTF-8"), PART_BUFFER_SIZE);
+		writer.write("<Delete>");
+		if (quiet) {
+			writer.write("<Quiet>true</Quiet>");
+		}
+		for (Iterator i = keys.iterator(); i.hasNext();) {
+			writer.write("<Object><Key>");
+			writer.write(Utils.escapeXml((String) i.next()));
+			writer.write("</Key></Object>");
+		}
+		writer.write("</Delete>");
+		writer.flush();
+	}
+
+	/**
+	 * Get the ACL for a given bucket
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public GetResponse getBucketACL(String bucket, Map headers)
+			throws MalformedURLException, IOException {
+		return getACL(bucket, "", headers);
+	}
+
+	/**
+	 * Get the ACL for a given object (or bucket, if key is null).
+	 * 
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public GetResponse getACL(String bucket, String key, Map headers)
+			throws MalformedURLException, IOException {
+
+		String resource = Utils.resourcePath(bucket, key) + "?acl";
+		return new GetResponse(execute("GET", resource,
+				endpoint -> makeRequest(endpoint, "GET", resource, headers)));
+	}
+
+	/**
+	 * Write a new ACL for a given bucket
+	 * 
+	 * @param aclXMLDoc
+	 *            The xml representation of the ACL as a String
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public Response putBucketACL(String bucket, String aclXMLDoc, Map headers)
+			throws MalformedURLException, IOException {
+		return putACL(bucket, "", aclXMLDoc, headers);
+	}
+
+	/**
+	 * Write a new ACL for a given object
+	 * 
+	 * @param aclXMLDoc
+	 *            The xml representation of the ACL as a String
+	 * @param bucket
+	 *            The name of the bucket where the object lives.
+	 * @param key
+	 *            The name of the key to use.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public Response putACL(String bucket, String key, String aclXMLDoc,
+			Map headers) throws MalformedURLException, IOException {
+		S3Object object = new S3Object(aclXMLDoc.getBytes(), null);
+
+		String resource = Utils.resourcePath(bucket, key) + "?acl";
+
+		return new Response(execute("PUT", resource, endpoint -> {
+			HttpURLConnection request = makeRequest(endpoint, "PUT", resource,
+					headers, object);
+
+			request.setDoOutput(true);
+			request.getOutputStream().write(
+					object.data == null ? new byte[] {} : object.data);
+			return request;
+		}));
+	}
+
+	/**
+	 * List all the buckets created by this account.
+	 * 
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public ListAllMyBucketsResponse listAllMyBuckets(Map headers)
+			throws MalformedURLException, IOException {
+		return new ListAllMyBucketsResponse(execute("GET", "",
+				endpoint -> makeRequest(endpoint, "GET", "", headers)));
+	}
+
+	/**
+	 * Sends a request, and sends it again while it fails in a way the
+	 * RetryPolicy considers transient. Without a RetryPolicy or a
+	 * RequestListener the request is only created; it is sent once its
+	 * response is asked for.
+	 * 
+	 * @param method
+	 *            The HTTP method, for the RateLimiter.
+	 * @param resource
+	 *            The resource, for the RateLimiter.
+	 * @param request
+	 *            Creates the request, and writes its body, for every attempt.
+	 */
+	private HttpURLConnection execute(String method, String resource,
+			Request request) throws IOException {
+		return execute(method, resource, request, this.retryPolicy);
+	}
+
+	/**
+	 * Sends a request, and sends it again while it fails in a way the given
+	 * RetryPolicy considers transient.
+	 * 
+	 * @param method
+	 *            The HTTP method, for the RateLimiter.
+	 * @param resource
+	 *            The resource, for the RateLimiter.
+	 * @param request
+	 *            Creates the request, and writes its body, for every attempt.
+	 * @param policy
+	 *            The policy to retry under, or null to send the request once.
+	 */
+	private HttpURLConnection execute(String method, String resource,
+			Request request, RetryPolicy policy) throws IOException {
+		if (policy == null) {
+			return send(method, resource, request);
+		}
+
+		long delay = 0;
+		for (int attempt = 1;; attempt++) {
+			HttpURLConnection connection = null;
+			IOException failure = null;
+			try {
+				connection = BufferedErrorURLConnection.buffer(send(method,
+						resource, request));
+				if (!policy.isRetryable(connection)) {
+					if (connection.getResponseCode() < 400) {
+						policy.recordSuccess();
+					}
+					return connection;
+				}
+			} catch (IOException e) {
+				if (!policy.isRetryable(e)) {
+					throw e;
+				}
+				failure = e;
+			}
+
+			if (!policy.allowRetry(attempt)) {
+				if (failure != null) {
+					throw failure;
+				}
+				return connection;
+			}
+			if (connection != null) {
+				connection.disconnect();
+			}
+			delay = policy.nextDelay(delay);
+			policy.backoff(delay);
+		}
+	}
+
+	/**
+	 * Creates one attempt of a request to the endpoint it should go to. If
+	 * there are several endpoints, a CircuitBreaker or a RequestListener, also
+	 * sends it and reports how it turned out. The attempt waits for the
+	 * RateLimiter first, so the wait doesn't count as response time, as an
+	 * outstanding request or as the probe of a half open circuit.
+	 */
+	private HttpURLConnection send(String method, String resource,
+			Request request) throws IOException {
+		RateLimiter limiter = this.rateLimiter;
+		if (limiter != null) {
+			limiter.acquire(method, resource);
+		}
+		CircuitBreaker breaker = this.circuitBreaker;
+		RequestListener listener = this.requestListener;
+		Endpoint endpoint = this.endpoints.choose(breaker, null);
+		if (breaker == null && listener == null && this.endpoints.size() == 1) {
+			return request.create(endpoint);
+		}
+
+		String host = endpoint.toString();
+		boolean accounted = request.isAccounted();
+		if (breaker != null && !accounted) {
+			breaker.acquire(host);
+		}
+		long start = System.nanoTime();
+		int status = 0;
+		if (!accounted) {
+			endpoint.begin();
+		}
+		try {
+			HttpURLConnection connection = request.create(endpoint);
+			status = connection.getResponseCode();
+			return connection;
+		} finally {
+			if (!accounted) {
+				endpoint.end(status);
+				if (breaker != null) {
+					breaker.record(host, status);
+				}
+			}
+			if (listener != null) {
+				listener.requestCompleted(status, System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Creates one attempt of a request to the given endpoint, with its body
+	 * written if it has one.
+	 */
+	private interface Request {
+		HttpURLConnection create(Endpoint endpoint) throws IOException;
+
+		/**
+		 * Whether the request counts itself against its endpoint and circuit,
+		 * because its copies may go to other endpoints.
+		 */
+		default boolean isAccounted() {
+			return false;
+		}
+	}
+
+	/**
+	 * Make a new HttpURLConnection without passing an S3Object parameter.
+	 */
+	private HttpURLConnection makeRequest(Endpoint endpoint, String method,
+			String resource, Map headers) throws MalformedURLException,
+			IOException {
+		return makeRequest(endpoint, method, resource, headers, null);
+	}
+
+	/**
+	 * Returns the Request for a GET, hedged if a HedgePolicy is set.
+	 * 
+	 * @param resource
+	 *            The resource name (bucketName + "/" + key).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	private Request getRequest(final String resource, final Map headers) {
+		final HedgePolicy policy = this.hedgePolicy;
+		if (policy == null) {
+			return endpoint -> makeRequest(endpoint, "GET", resource, headers);
+		}
+		return new Request() {
+			public HttpURLConnection create(Endpoint endpoint)
+					throws IOException {
+				return makeHedgedRequest(endpoint, resource, headers, policy);
+			}
+
+			public boolean isAccounted() {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Make a hedged GET request. It has already been sent and its response
+	 * headers have arrived. The hedge goes to another endpoint if there is
+	 * one. Each copy is counted against the endpoint and circuit it went to.
+	 * 
+	 * @param endpoint
+	 *            The endpoint to send the request to.
+	 * @param resource
+	 *            The resource name (bucketName + "/" + key).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 * @param policy
+	 *            Decides when to hedge, and learns from the response times.
+	 */
+	private HttpURLConnection makeHedgedRequest(Endpoint endpoint,
+			String resource, Map headers, HedgePolicy policy)
+			throws MalformedURLException, IOException {
+		long delay = policy.getHedgeDelay();
+		BlockingQueue<HedgedRequest> answered = new LinkedBlockingQueue<HedgedRequest>();
+		HedgedRequest primary = startHedgedRequest(endpoint, resource,
+				headers, answered);
+		HedgedRequest hedge = null;
+		HedgedRequest first;
+		try {
+			// without enough response times to go by yet, just measure
+			first = delay < 0 ? answered.take() : answered.poll(delay,
+					TimeUnit.NANOSECONDS);
+			if (first == null) {
+				Endpoint other = this.endpoints.choose(this.circuitBreaker,
+						endpoint);
+				try {
+					RateLimiter limiter = this.rateLimiter;
+					if (limiter != null) {
+						limiter.acquire("GET", resource);
+					}
+					hedge = startHedgedRequest(other, resource, headers,
+							answered);
+				} catch (IOException e) {
+					// the hedge couldn't be sent, e.g. its circuit is open
+				}
+				first = answered.take();
+				if (first.failure != null && hedge != null) {
+					// the other copy may still succeed
+					first = answered.take();
+				}
+			}
+		} catch (InterruptedException e) {
+			primary.cancel();
+			if (hedge != null) {
+				hedge.cancel();
+			}
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for "
+					+ resource);
+		}
+
+		HedgedRequest loser = first == primary ? hedge : primary;
+		if (loser != null) {
+			loser.cancel();
+		}
+		policy.record(first.failure == null ? first.latency : -1,
+				hedge != null, first == hedge && first.failure == null);
+		if (first.failure != null) {
+			throw first.failure;
+		}
+		return first.request;
+	}
+
+	/**
+	 * Sends one copy of a hedged GET, once its circuit lets it through.
+	 */
+	private HedgedRequest startHedgedRequest(Endpoint endpoint,
+			String resource, Map headers,
+			BlockingQueue<HedgedRequest> answered) throws IOException {
+		CircuitBreaker breaker = this.circuitBreaker;
+		if (breaker != null) {
+			breaker.acquire(endpoint.toString());
+		}
+		HttpURLConnection request;
+		try {
+			request = makeRequest(endpoint, "GET", resource, headers);
+		} catch (IOException | RuntimeException e) {
+			if (breaker != null) {
+				// never sent, let another request probe the circuit
+				breaker.record(endpoint.toString(), -1);
+			}
+			throw e;
+		}
+		return new HedgedRequest(request, endpoint, breaker, answered);
+	}
+
+	/**
+	 * Make a new HttpURLConnection.
+	 * 
+	 * @param endpoint
+	 *            The endpoint to send the request to.
+	 * @param method
+	 *            The HTTP method to use (GET, PUT, DELETE)
+	 * @param resource
+	 *            The resource name (bucketName + "/" + key).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 * @param object
+	 *            The S3Object that is to be written (can be null).
+	 */
+	private HttpURLConnection makeRequest(Endpoint endpoint, String method,
+			String resource, Map headers, S3Object object)
+			throws MalformedURLException, IOException {
+		URL url = makeURL(endpoint, resource);
+		HttpURLConnection connection = openConnection(url);
+		connection.setConnectTimeout(this.connectTimeout);
+		connection.setReadTimeout(this.readTimeout);
+		connection.setRequestMethod(method);
+
+		addHeaders(connection, headers);
+		if (object != null)
+			addMetadataHeaders(connection, object.metadata);
+		addAuthHeader(connection, method, resource);
+
+		return connection;
+	}
+
+	/**
+	 * Make a new HttpURLConnection.
+	 * 
+	 * @param endpoint
+	 *            The endpoint to send the request to.
+	 * @param method
+	 *            The HTTP method to use (GET, PUT, DELETE)
+	 * @param resource
+	 *            The resource name (bucketName + "/" + key).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 * @param object
+	 *            The S3StreamObject that is to be written (can be null).
+	 */
+	private HttpURLConnection makeStreamRequest(Endpoint endpoint,
+			String method, String resource, Map headers, S3StreamObject object)
+			throws MalformedURLException, IOException {
+		URL url = makeURL(endpoint, resource);
+		HttpURLConnection connection = openConnection(url);
+		connection.setConnectTimeout(this.connectTimeout);
+		connection.setReadTimeout(this.readTimeout);
+		connection.setRequestMethod(method);
+
+		addHeaders(connection, headers);
+		if (object != null)
+			addMetadataHeaders(connection, object.metadata);
+		addAuthHeader(connection, method, resource);
+
+		return connection;
+	}
+
+	/**
+	 * Open an HttpURLConnection for the given URL on the transport.
+	 * 
+	 * @param url
+	 *            The URL to connect to.
+	 */
+	private HttpURLConnection openConnection(URL url) throws IOException {
+		return this.transport.openConnection(url);
+	}
+
+	/**
+	 * Add the given headers to the HttpURLConnection.
+	 * 
+	 * @param connection
+	 *            The HttpURLConnection to which the headers will be added.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	private void addHeaders(HttpURLConnection connection, Map headers) {
+		addHeaders(connection, headers, "");
+	}
+
+	/**
+	 * Add the given metadata fields to the HttpURLConnection.
+	 * 
+	 * @param connection
+	 *            The HttpURLConnection to which the headers will be added.
+	 * @param metadata
+	 *            A Map of String to List of Strings representing the s3
+	 *            metadata for this resource.
+	 */
+	private void addMetadataHeaders(HttpURLConnection connection, Map metadata) {
+		addHeaders(connection, metadata, Utils.METADATA_PREFIX);
+	}
+
+	/**
+	 * Add the given headers to the HttpURLConnection with a prefix before the
+	 * keys.
+	 * 
+	 * @param connection
+	 *            The HttpURLConnection to which the headers will be added.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 * @param prefix
+	 *            The string to prepend to each key before adding it to the
+	 *            connection.
+	 */
+	private void addHeaders(HttpURLConnection connection, Map headers,
+			String prefix) {
+		if (headers != null) {
+			for (Iterator i = headers.keySet().iterator(); i.hasNext();) {
+				String key = (String) i.next();
+				for (Iterator j = ((List) headers.get(key)).iterator(); j
+						.hasNext();) {
+					String value = (String) j.next();
+					connection.addRequestProperty(prefix + key, value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the appropriate Authorization header to the HttpURLConnection.
+	 * 
+	 * @param connection
+	 *            The HttpURLConnection to which the header will be added.
+	 * @param method
+	 *            The HTTP method to use (GET, PUT, DELETE)
+	 * @param resource
+	 *            The resource name (bucketName + "/" + key).
+	 */
+	private void addAuthHeader(HttpURLConnection connection, String method,
+			String resource) {
+		if (connection.getRequestProperty("Date") == null) {
+			connection.setRequestProperty("Date", httpDate());
+		}
+		if (connection.getRequestProperty("Content-Type") == null) {
+			connection.setRequestProperty("Content-Type", "");
+		}
+
+		connection.setRequestProperty("Authorization", signer.authorization(
+				method, resource, connection.getRequestProperties()));
+	}
+
+	/**
+	 * Build the complete set of signed request headers for transports that
+	 * don't send their requests through an HttpURLConnection. The request
+	 * time is sent as x-amz-date, since not every HTTP client allows the Date
+	 * header to be set.
+	 * 
+	 * @param method
+	 *            The HTTP method to use (GET, PUT, DELETE)
+	 * @param resource
+	 *            The resource name (bucketName + "/" + key).
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 * @param metadata
+	 *            A Map of String to List of Strings representing the s3
+	 *            metadata for this resource (can be null).
+	 */
+	Map<String, List<String>> makeSignedHeaders(String method,
+			String resource, Map headers, Map metadata) {
+		Map<String, List<String>> signed = new LinkedHashMap<String, List<String>>();
+		addHeaders(signed, headers, "");
+		addHeaders(signed, metadata, Utils.METADATA_PREFIX);
+		signed.put(Utils.ALTERNATIVE_DATE_HEADER, Collections
+				.singletonList(httpDate()));
+
+		signed.put("Authorization", Collections.singletonList(signer
+				.authorization(method, resource, signed)));
+		return signed;
+	}
+
+	/**
+	 * Copy the given headers into a header Map with a prefix before the keys.
+	 */
+	private void addHeaders(Map<String, List<String>> target, Map headers,
+			String prefix) {
+		if (headers != null) {
+			for (Iterator i = headers.keySet().iterator(); i.hasNext();) {
+				String key = (String) i.next();
+				List<String> values = target.get(prefix + key);
+				if (values == null) {
+					values = new ArrayList<String>();
+					target.put(prefix + key, values);
+				}
+				values.addAll((List) headers.get(key));
+			}
+		}
+	}
+
+	/**
+	 * Create a new URL object for a given resource on an endpoint.
+	 * 
+	 * @param endpoint
+	 *            The endpoint to send the request to.
+	 * @param resource
+	 *            The resource name (bucketName + "/" + key).
+	 */
+	URL makeURL(Endpoint endpoint, String resource)
+			throws MalformedURLException {
+		String protocol = this.isSecure ? "https" : "http";
+		return new URL(protocol, endpoint.getHost(), endpoint.getPort(), "/"
+				+ resource);
+	}
+
+	/**
+	 * Generate an rfc822 date for use in the Date HTTP header. The header
+	 * only changes once a second, so the last one formatted is reused until
+	 * then.
+	 */
+	public static String httpDate() {
+		long second = System.currentTimeMillis() / 1000;
+		HttpDate date = lastHttpDate;
+		if (date == null || date.second != second) {
+			date = new HttpDate(second, HTTP_DATE_FORMAT.format(Instant
+					.ofEpochSecond(second)));
+			lastHttpDate = date;
+		}
+		return date.text;
+	}
+
+	/**
+	 * A formatted Date header and the second it is for.
+	 */
+	private static final class HttpDate {
+		final long second;
+
+		final String text;
+
+		HttpDate(long second, String text) {
+			this.second = second;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * One copy of a hedged GET. It is sent on a virtual thread of its own and
+	 * queues itself once its response headers have arrived or it failed.
+	 */
+	private static class HedgedRequest implements Runnable {
+		final HttpURLConnection request;
+
+		/** The endpoint the request went to */
+		private final Endpoint endpoint;
+
+		/** The breaker to record the outcome with, if any */
+		private final CircuitBreaker breaker;
+
+		private final BlockingQueue<HedgedRequest> answered;
+
+		private volatile boolean cancelled;
+
+		/** Nanoseconds until the response headers arrived */
+		long latency;
+
+		IOException failure;
+
+		HedgedRequest(HttpURLConnection request, Endpoint endpoint,
+				CircuitBreaker breaker, BlockingQueue<HedgedRequest> answered) {
+			this.request = request;
+			this.endpoint = endpoint;
+			this.breaker = breaker;
+			this.answered = answered;
+			endpoint.begin();
+			Thread.ofVirtual().start(this);
+		}
+
+		public void run() {
+			long start = System.nanoTime();
+			int status = 0;
+			try {
+				status = request.getResponseCode();
+			} catch (IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				// the JDK HttpURLConnection doesn't always take being
+				// disconnected from another thread gracefully
+				failure = new IOException(e.toString(), e);
+			}
+			latency = System.nanoTime() - start;
+			// a cancelled copy didn't fail, don't fail over because of it
+			int outcome = cancelled && status == 0 ? -1 : status;
+			endpoint.end(outcome);
+			if (breaker != null) {
+				breaker.record(endpoint.toString(), outcome);
+			}
+			if (cancelled) {
+				// lost the race while the response was on its way
+				request.disconnect();
+			}
+			answered.add(this);
+		}
+
+		/**
+		 * Disconnects the request, which also ends a read blocked on it.
+		 */
+		void cancel() {
+			cancelled = true;
+			request.disconnect();
+		}
+	}
+}
@@ -0,0 +1,310 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.silvasoftinc.s3.S3StreamObject;
+
+/**
+ * An asynchronous view of an AWSAuthConnection. Every method sends its request
+ * on a java.net.http.HttpClient and returns immediately with a
+ * CompletableFuture that completes with the usual Response subtype once the
+ * response has arrived. Requests are multiplexed by the HttpClient's selector
+ * rather than parked on a thread each, so thousands of them can be in flight
+ * at once.
+ * <p>
+ * Requests are signed with the credentials of the wrapped AWSAuthConnection.
+ * Bodies of get() and listBucket() responses, and all error bodies, are read
+ * into memory before the future completes; getStream() completes as soon as
+ * the response headers have arrived and the body is read from its stream.
+ * <p>
+ * Requests share the wrapped connection's endpoints, CircuitBreaker,
+ * RateLimiter and RequestListener. Its RetryPolicy does not apply: a future
+ * completes with the response to the only attempt, and a request that should
+ * be sent again has to be sent again by the caller, since a streamed body
+ * can only be sent once.
+ */
+public class AsyncAWSAuthConnection {
+
+	/** Shared by all instances that don't supply their own client */
+	private static HttpClient defaultClient;
+
+	private final AWSAuthConnection connection;
+
+	private final HttpClient client;
+
+	public AsyncAWSAuthConnection(AWSAuthConnection connection) {
+		this(connection, getDefaultClient());
+	}
+
+	/**
+	 * Create a new asynchronous view of an AWSAuthConnection.
+	 * 
+	 * @param connection
+	 *            The connection providing the credentials and the endpoint.
+	 * @param client
+	 *            The HttpClient used to send the requests. It should be
+	 *            configured for HTTP/1.1.
+	 */
+	public AsyncAWSAuthConnection(AWSAuthConnection connection,
+			HttpClient client) {
+		this.connection = connection;
+		this.client = client;
+	}
+
+	/**
+	 * Returns the HttpClient shared by instances created without one.
+	 * <p>
+	 * Its executor runs response handling and the stages callers chain onto
+	 * the futures, which may block (reading a getStream() body, for one). The
+	 * HttpClient's default cached pool would hold a platform thread for each
+	 * stage blocked at a time, so the shared client uses virtual threads.
+	 */
+	public static synchronized HttpClient getDefaultClient() {
+		if (defaultClient == null) {
+			defaultClient = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_1_1)
+					.connectTimeout(Duration.ofSeconds(30))
+					.executor(Executors.newVirtualThreadPerTaskExecutor())
+					.build();
+		}
+		return defaultClient;
+	}
+
+	/**
+	 * Returns the synchronous connection this instance was created from.
+	 */
+	public AWSAuthConnection getConnection() {
+		return this.connection;
+	}
+
+	/**
+	 * Reads an object from S3.
+	 * 
+	 * @see AWSAuthConnection#get(String, String, Map)
+	 */
+	public CompletableFuture<GetResponse> get(String bucket, String key,
+			Map headers) {
+		String resource = Utils.resourcePath(bucket, key);
+		return send("GET", resource, headers, null,
+				HttpRequest.BodyPublishers.noBody(),
+				HttpResponse.BodyHandlers.ofByteArray(),
+				GetResponse::new);
+	}
+
+	/**
+	 * Reads an object from S3 using streaming. The future completes once the
+	 * response headers have arrived.
+	 * 
+	 * @see AWSAuthConnection#getStream(String, String, Map)
+	 */
+	public CompletableFuture<GetStreamResponse> getStream(String bucket,
+			String key, Map headers) {
+		String resource = Utils.resourcePath(bucket, key);
+		return send("GET", resource, headers, null,
+				HttpRequest.BodyPublishers.noBody(),
+				HttpResponse.BodyHandlers.ofInputStream(),
+				GetStreamResponse::new);
+	}
+
+	/**
+	 * Writes an object to S3.
+	 * 
+	 * @see AWSAuthConnection#put(String, String, S3Object, Map)
+	 */
+	public CompletableFuture<Response> put(String bucket, String key,
+			S3Object object, Map headers) {
+		String resource = Utils.resourcePath(bucket, key);
+		byte[] data = object.data == null ? new byte[] {} : object.data;
+		return send("PUT", resource, headers, object.metadata,
+				HttpRequest.BodyPublishers.ofByteArray(data),
+				HttpResponse.BodyHandlers.ofByteArray(), Response::new);
+	}
+
+	/**
+	 * Writes an object to S3 from a stream. The stream is read by the
+	 * HttpClient as the request is sent; object.length must be set.
+	 * 
+	 * @see AWSAuthConnection#putStream(String, String, S3StreamObject, Map)
+	 */
+	public CompletableFuture<Response> putStream(String bucket, String key,
+			S3StreamObject object, Map headers) {
+		String resource = Utils.resourcePath(bucket, key);
+		HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers
+				.fromPublisher(HttpRequest.BodyPublishers
+						.ofInputStream(() -> object.stream), object.length);
+		if (object.length == 0) {
+			body = HttpRequest.BodyPublishers.noBody();
+		}
+		return send("PUT", resource, headers, object.metadata, body,
+				HttpResponse.BodyHandlers.ofByteArray(), Response::new);
+	}
+
+	/**
+	 * Deletes an object from S3.
+	 * 
+	 * @see AWSAuthConnection#delete(String, String, Map)
+	 */
+	public CompletableFuture<Response> delete(String bucket, String key,
+			Map headers) {
+		String resource = Utils.resourcePath(bucket, key);
+		return send("DELETE", resource, headers, null,
+				HttpRequest.BodyPublishers.noBody(),
+				HttpResponse.BodyHandlers.ofByteArray(), Response::new);
+	}
+
+	/**
+	 * Lists the contents of a bucket.
+	 * 
+	 * @see AWSAuthConnection#listBucket(String, String, String, Integer, Map)
+	 */
+	public CompletableFuture<ListBucketResponse> listBucket(String bucket,
+			String prefix, String marker, Integer maxKeys, Map headers) {
+		String resource = Utils.pathForListOptions(bucket, prefix, marker,
+				maxKeys);
+		return send("GET", resource, headers, null,
+				HttpRequest.BodyPublishers.noBody(),
+				HttpResponse.BodyHandlers.ofByteArray(),
+				ListBucketResponse::new);
+	}
+
+	/**
+	 * Signs and sends a request, and converts its response into a Response
+	 * subtype once it arrives. The request goes through the connection's
+	 * CircuitBreaker, RateLimiter and endpoints like a synchronous one, and
+	 * is reported to its RequestListener; a request the RateLimiter holds
+	 * back is sent once its turn comes, without blocking the caller.
+	 */
+	private <B, R> CompletableFuture<R> send(String method, String resource,
+			Map headers, Map metadata, HttpRequest.BodyPublisher body,
+			HttpResponse.BodyHandler<B> handler, ResponseFactory<R> factory) {
+		RateLimiter limiter = this.connection.getRateLimiter();
+		long wait = limiter != null ? limiter.reserve(method, resource) : 0;
+		if (wait <= 0) {
+			return exchange(method, resource, headers, metadata, body,
+					handler, factory);
+		}
+		// the wait doesn't count as an outstanding request or response time
+		return CompletableFuture.runAsync(() -> {
+		}, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS))
+				.thenCompose(ready -> exchange(method, resource, headers,
+						metadata, body, handler, factory));
+	}
+
+	/**
+	 * Sends a request the RateLimiter has let through to the endpoint it
+	 * should go to, and reports how it turned out.
+	 */
+	private <B, R> CompletableFuture<R> exchange(String method,
+			String resource, Map headers, Map metadata,
+			HttpRequest.BodyPublisher body, HttpResponse.BodyHandler<B> handler,
+			ResponseFactory<R> factory) {
+		CircuitBreaker breaker = this.connection.getCircuitBreaker();
+		RequestListener listener = this.connection.getRequestListener();
+		Endpoint endpoint = this.connection.getEndpoints().choose(breaker,
+				null);
+		String host = endpoint.toString();
+		URL url;
+		URI uri;
+		try {
+			url = this.connection.makeURL(endpoint, resource);
+			uri = url.toURI();
+			if (breaker != null) {
+				breaker.acquire(host);
+			}
+		} catch (IOException e) {
+			return failed(e);
+		} catch (URISyntaxException e) {
+			return failed(new IOException(e.getMessage(), e));
+		}
+
+		long start = System.nanoTime();
+		endpoint.begin();
+		return this.client.sendAsync(
+				sign(uri, method, resource, headers, metadata, body), handler)
+				.whenComplete((response, t) -> {
+					int status = response != null ? response.statusCode() : 0;
+					endpoint.end(status);
+					if (breaker != null) {
+						breaker.record(host, status);
+					}
+					if (listener != null) {
+						listener.requestCompleted(status, System.nanoTime()
+								- start);
+					}
+				}).thenApply(response -> {
+					try {
+						return factory.create(new HttpClientURLConnection(url,
+								response));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	/**
+	 * Builds a request signed with the connection's credentials.
+	 */
+	private HttpRequest sign(URI uri, String method, String resource,
+			Map headers, Map metadata, HttpRequest.BodyPublisher body) {
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri).method(
+				method, body);
+		Map<String, List<String>> signed = this.connection.makeSignedHeaders(
+				method, resource, headers, metadata);
+		for (Map.Entry<String, List<String>> entry : signed.entrySet()) {
+			for (String value : entry.getValue()) {
+				// send exactly what was signed, empty values included
+				request.header(entry.getKey(), value);
+			}
+		}
+		return request.build();
+	}
+
+	/**
+	 * Creates a Response subtype from a completed exchange.
+	 */
+	private interface ResponseFactory<R> {
+		R create(HttpClientURLConnection connection) throws IOException;
+	}
+
+	private static <R> CompletableFuture<R> failed(Throwable t) {
+		CompletableFuture<R> future = new CompletableFuture<R>();
+		future.completeExceptionally(new CompletionException(t));
+		return future;
+	}
+}
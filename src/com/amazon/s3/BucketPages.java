@@ -0,0 +1,202 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Pages through the listing of a bucket. Each page is requested from where
+ * the one before it ended, and the pages stop with the first one S3 doesn't
+ * mark as truncated, so there is no extra request for an empty page at the
+ * end. While the caller works on a page, the next one is already being
+ * fetched on a virtual thread.
+ * <p>
+ * A page that could not be listed is returned like the others, with null
+ * entries, and ends the iteration. An IOException listing a page is thrown
+ * from next() as an UncheckedIOException.
+ * <p>
+ * Closing the iterator cancels the page being fetched ahead, if any.
+ */
+public class BucketPages implements Iterator<ListBucketResponse>,
+		AutoCloseable {
+
+	private final AWSAuthConnection conn;
+
+	private final String bucket;
+
+	private final String prefix;
+
+	private final String delimiter;
+
+	private final Map headers;
+
+	private int remaining;
+
+	private FutureTask<ListBucketResponse> nextPage;
+
+	/**
+	 * Starts listing a bucket.
+	 * 
+	 * @param conn
+	 *            The connection to list the bucket with.
+	 * @param bucket
+	 *            The name of the bucket to list.
+	 * @param prefix
+	 *            All returned keys will start with this string (can be null).
+	 * @param limit
+	 *            The most keys to list in all, or 0 to list every key.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public BucketPages(AWSAuthConnection conn, String bucket, String prefix,
+			int limit, Map headers) {
+		this(conn, bucket, prefix, null, limit, headers);
+	}
+
+	/**
+	 * Starts listing a bucket, rolling up the keys that contain the delimiter
+	 * after the prefix into the pages' commonPrefixes.
+	 * 
+	 * @param conn
+	 *            The connection to list the bucket with.
+	 * @param bucket
+	 *            The name of the bucket to list.
+	 * @param prefix
+	 *            All returned keys will start with this string (can be null).
+	 * @param delimiter
+	 *            The delimiter to roll keys up at (can be null).
+	 * @param limit
+	 *            The most keys and common prefixes to list in all, or 0 to
+	 *            list every one.
+	 * @param headers
+	 *            A Map of String to List of Strings representing the http
+	 *            headers to pass (can be null).
+	 */
+	public BucketPages(AWSAuthConnection conn, String bucket, String prefix,
+			String delimiter, int limit, Map headers) {
+		this.conn = conn;
+		this.bucket = bucket;
+		this.prefix = prefix;
+		this.delimiter = delimiter;
+		this.headers = headers;
+		this.remaining = limit > 0 ? limit : -1;
+		fetch(null);
+	}
+
+	/**
+	 * Starts fetching the page after the given marker.
+	 */
+	private void fetch(String marker) {
+		final Integer maxKeys = remaining > 0 ? Integer.valueOf(remaining)
+				: null;
+		nextPage = new FutureTask<ListBucketResponse>(() -> conn.listBucket(
+				bucket, prefix, marker, maxKeys, delimiter, headers));
+		Thread.ofVirtual().name("list " + bucket).start(nextPage);
+	}
+
+	public boolean hasNext() {
+		return nextPage != null;
+	}
+
+	/**
+	 * Returns the next page, waiting for it if it hasn't been fetched yet.
+	 */
+	public ListBucketResponse next() {
+		if (nextPage == null) {
+			throw new NoSuchElementException();
+		}
+		ListBucketResponse page;
+		try {
+			page = nextPage.get();
+		} catch (InterruptedException e) {
+			throw new UncheckedIOException(new InterruptedIOException(
+					"Interrupted waiting for a page of " + bucket));
+		} catch (ExecutionException e) {
+			nextPage = null;
+			Throwable t = e.getCause();
+			if (t instanceof IOException) {
+				throw new UncheckedIOException(t.getMessage(),
+						(IOException) t);
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			}
+			throw (RuntimeException) t;
+		}
+
+		nextPage = null;
+		List entries = page.entries;
+		if (entries == null || !page.isTruncated || entries.isEmpty()
+				&& page.commonPrefixes.isEmpty()) {
+			return page;
+		}
+		if (remaining > 0) {
+			remaining -= page.entryCount + page.commonPrefixes.size();
+			if (remaining <= 0) {
+				return page;
+			}
+		}
+		fetch(nextMarker(page));
+		return page;
+	}
+
+	/**
+	 * The marker to list the page after the given one from.
+	 */
+	static String nextMarker(ListBucketResponse page) {
+		if (page.nextMarker != null && page.nextMarker.length() > 0) {
+			return page.nextMarker;
+		}
+		String marker = page.lastKey;
+		if (!page.commonPrefixes.isEmpty()) {
+			String last = (String) page.commonPrefixes.get(page.commonPrefixes
+					.size() - 1);
+			if (marker == null || last.compareTo(marker) > 0) {
+				marker = last;
+			}
+		}
+		return marker;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Cancels the page being fetched ahead, if any.
+	 */
+	public void close() {
+		if (nextPage != null) {
+			nextPage.cancel(true);
+			nextPage = null;
+		}
+	}
+}
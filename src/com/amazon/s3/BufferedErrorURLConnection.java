@@ -0,0 +1,125 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+
+package com.amazon.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An answered HttpURLConnection whose error document has been read into
+ * memory, so it can be read more than once. The JDK's own connections hand
+ * their error stream out only once, and the RetryPolicy has to read it to
+ * find the S3 error code, which would leave nothing for the caller.
+ */
+class BufferedErrorURLConnection extends HttpURLConnection {
+
+	/** Error bodies larger than this are truncated */
+	private static final int MAX_ERROR_BODY = 1024 * 1024;
+
+	private final HttpURLConnection connection;
+
+	private final byte[] errorBody;
+
+	private BufferedErrorURLConnection(HttpURLConnection connection,
+			byte[] errorBody) throws IOException {
+		super(connection.getURL());
+		this.connection = connection;
+		this.errorBody = errorBody;
+		this.connected = true;
+		this.method = connection.getRequestMethod();
+		this.responseCode = connection.getResponseCode();
+		this.responseMessage = connection.getResponseMessage();
+	}
+
+	/**
+	 * Returns the connection with its error document read into memory if it
+	 * failed with one, or the connection itself otherwise.
+	 * 
+	 * @param connection
+	 *            A request whose response has arrived.
+	 */
+	static HttpURLConnection buffer(HttpURLConnection connection)
+			throws IOException {
+		if (connection instanceof BufferedErrorURLConnection
+				|| connection.getResponseCode() < 400) {
+			return connection;
+		}
+		InputStream in = connection.getErrorStream();
+		if (in == null) {
+			return connection;
+		}
+		byte[] errorBody;
+		try {
+			errorBody = in.readNBytes(MAX_ERROR_BODY);
+		} finally {
+			in.close();
+		}
+		return new BufferedErrorURLConnection(connection, errorBody);
+	}
+
+	public void connect() throws IOException {
+		// the exchange has already happened
+	}
+
+	public void disconnect() {
+		connection.disconnect();
+	}
+
+	public boolean usingProxy() {
+		return connection.usingProxy();
+	}
+
+	public InputStream getInputStream() throws IOException {
+		return connection.getInputStream();
+	}
+
+	public OutputStream getOutputStream() throws IOException {
+		return connection.getOutputStream();
+	}
+
+	public InputStream getErrorStream() {
+		return new ByteArrayInputStream(errorBody);
+	}
+
+	public String getHeaderField(int n) {
+		return connection.getHeaderField(n);
+	}
+
+	public String getHeaderFieldKey(int n) {
+		return connection.getHeaderFieldKey(n);
+	}
+
+	public String getHeaderField(String name) {
+		return connection.getHeaderField(name);
+	}
+
+	public Map<String, List<String>> getHeaderFields() {
+		return connection.getHeaderFields();
+	}
+}
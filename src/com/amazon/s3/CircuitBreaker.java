@@ -0,0 +1,290 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stops sending requests to a host that keeps failing, so that callers get
+ * an error straight away instead of each waiting out its own timeout.
+ * <p>
+ * Every host has a circuit. It opens (trips) after a number of failures in a
+ * row, where a failure is a connection that couldn't be made, timed out or
+ * broke, or a 5xx response other than 501 and 503. A 503 means S3 is
+ * throttling; that is left to the RetryPolicy and to sending fewer requests.
+ * While a circuit is open requests fail with a CircuitOpenException. After a
+ * while it half opens and lets a single probe request through: if the probe
+ * succeeds the circuit closes, if it fails the circuit opens again for twice
+ * as long, up to MAX_OPEN_MILLIS.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The states of the circuit of a host.
+	 */
+	public enum State {
+		/** Requests are sent */
+		CLOSED,
+		/** Requests fail without being sent */
+		OPEN,
+		/** One probe request is sent to see whether the host has recovered */
+		HALF_OPEN
+	};
+
+	/** Default number of failures in a row that trip a circuit */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	/** Default time a tripped circuit stays open before it is probed */
+	public static final long DEFAULT_OPEN_MILLIS = 5000;
+
+	/** Longest time a circuit stays open before it is probed */
+	public static final long MAX_OPEN_MILLIS = 60000;
+
+	/** The breaker shared by all connections unless told otherwise */
+	private static final CircuitBreaker defaultBreaker = new CircuitBreaker();
+
+	private final int failureThreshold;
+
+	private final long openMillis;
+
+	private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+
+	private long tripCount;
+
+	private long rejectedCount;
+
+	public CircuitBreaker() {
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+	}
+
+	/**
+	 * Create a new circuit breaker, with all circuits closed.
+	 * 
+	 * @param failureThreshold
+	 *            The number of failures in a row that trip a circuit.
+	 * @param openMillis
+	 *            The number of milliseconds a tripped circuit stays open
+	 *            before the first probe.
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("failureThreshold must be >= 1");
+		}
+		if (openMillis < 0) {
+			throw new IllegalArgumentException("openMillis must be >= 0");
+		}
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * Returns the breaker shared by all connections unless told otherwise.
+	 */
+	public static CircuitBreaker getDefault() {
+		return defaultBreaker;
+	}
+
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	public long getOpenMillis() {
+		return openMillis;
+	}
+
+	/**
+	 * Checks that a request may be sent to a host, and makes it the probe if
+	 * the circuit is half open. Every request let through must be followed by
+	 * a call to record().
+	 * 
+	 * @param host
+	 *            The host, with its port.
+	 * @throws CircuitOpenException
+	 *             If the circuit is open, or half open with a probe already
+	 *             in flight.
+	 */
+	public void acquire(String host) throws CircuitOpenException {
+		Circuit circuit = circuits.get(host);
+		if (circuit == null) {
+			Circuit created = new Circuit();
+			circuit = circuits.putIfAbsent(host, created);
+			if (circuit == null) {
+				circuit = created;
+			}
+		}
+
+		long retryIn;
+		synchronized (circuit) {
+			if (circuit.state == State.CLOSED) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			if (circuit.state == State.OPEN && now >= circuit.openUntil) {
+				circuit.state = State.HALF_OPEN;
+			}
+			if (circuit.state == State.HALF_OPEN && !circuit.probing) {
+				circuit.probing = true;
+				return;
+			}
+			retryIn = Math.max(0, circuit.openUntil - now);
+		}
+		synchronized (this) {
+			rejectedCount++;
+		}
+		throw new CircuitOpenException("Circuit open for " + host
+				+ " after repeated failures, next try in " + retryIn + "ms");
+	}
+
+	/**
+	 * Records how a request let through by acquire() turned out.
+	 * 
+	 * @param host
+	 *            The host, with its port.
+	 * @param status
+	 *            The HTTP status code of the response, 0 if no response
+	 *            arrived, or -1 if the request was cancelled or never sent,
+	 *            which tells nothing about the host.
+	 */
+	public void record(String host, int status) {
+		Circuit circuit = circuits.get(host);
+		if (circuit == null) {
+			return;
+		}
+		if (status < 0) {
+			synchronized (circuit) {
+				// let another request probe the circuit
+				circuit.probing = false;
+			}
+			return;
+		}
+
+		boolean failed = status <= 0
+				|| (status >= 500 && status != 501 && status != 503);
+		boolean tripped = false;
+		synchronized (circuit) {
+			if (!failed) {
+				circuit.failures = 0;
+				circuit.openFor = 0;
+				circuit.state = State.CLOSED;
+				circuit.probing = false;
+				return;
+			}
+
+			circuit.failures++;
+			if (circuit.state == State.HALF_OPEN) {
+				// the probe failed, back off further
+				circuit.openFor = Math.min(MAX_OPEN_MILLIS,
+						circuit.openFor * 2);
+				circuit.state = State.OPEN;
+				circuit.probing = false;
+				circuit.openUntil = System.currentTimeMillis()
+						+ circuit.openFor;
+			} else if (circuit.state == State.CLOSED
+					&& circuit.failures >= failureThreshold) {
+				circuit.openFor = openMillis;
+				circuit.state = State.OPEN;
+				circuit.openUntil = System.currentTimeMillis()
+						+ circuit.openFor;
+				tripped = true;
+			}
+		}
+		if (tripped) {
+			synchronized (this) {
+				tripCount++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the state of the circuit of a host.
+	 * 
+	 * @param host
+	 *            The host, with its port.
+	 */
+	public State getState(String host) {
+		Circuit circuit = circuits.get(host);
+		if (circuit == null) {
+			return State.CLOSED;
+		}
+		synchronized (circuit) {
+			if (circuit.state == State.OPEN
+					&& System.currentTimeMillis() >= circuit.openUntil) {
+				return State.HALF_OPEN;
+			}
+			return circuit.state;
+		}
+	}
+
+	/**
+	 * Returns the state of the circuit of every host requests were sent to,
+	 * by host.
+	 */
+	public Map<String, State> getStates() {
+		Map<String, State> states = new TreeMap<String, State>();
+		for (String host : circuits.keySet()) {
+			states.put(host, getState(host));
+		}
+		return states;
+	}
+
+	/**
+	 * Closes every circuit.
+	 */
+	public void reset() {
+		circuits.clear();
+	}
+
+	/**
+	 * Returns the number of times a circuit tripped.
+	 */
+	public synchronized long getTripCount() {
+		return tripCount;
+	}
+
+	/**
+	 * Returns the number of requests that failed because their circuit was
+	 * open.
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * The circuit of one host.
+	 */
+	private static class Circuit {
+		State state = State.CLOSED;
+
+		int failures;
+
+		boolean probing;
+
+		long openUntil;
+
+		long openFor;
+	}
+}
@@ -0,0 +1,110 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Returned by AWSAuthConnection.completeMultipartUpload().  S3 answers 200
+ * as soon as it starts to assemble the parts, so a failure to assemble them
+ * arrives as an error document in a 200 response; check errorCode as well
+ * as the response code.
+ */
+public class CompleteMultipartUploadResponse extends Response {
+    /**
+     * The ETag of the assembled object.  This will be null if the request
+     * fails.
+     */
+    public String etag = null;
+
+    /**
+     * The S3 error code if assembling the object failed after a 200
+     * response, otherwise null.
+     */
+    public String errorCode = null;
+
+    /**
+     * The S3 error message that goes with errorCode.
+     */
+    public String errorMessage = null;
+
+    public CompleteMultipartUploadResponse(HttpURLConnection connection) throws IOException {
+        super(connection);
+        if (connection.getResponseCode() < 400) {
+            try {
+                XMLReader xr = Utils.createXMLReader();
+                CompleteHandler handler = new CompleteHandler();
+                xr.setContentHandler(handler);
+                xr.setErrorHandler(handler);
+
+                xr.parse(new InputSource(connection.getInputStream()));
+                if (handler.isError) {
+                    this.errorCode = handler.code;
+                    this.errorMessage = handler.message;
+                } else {
+                    this.etag = handler.etag;
+                }
+            } catch (SAXException e) {
+                throw new RuntimeException("Unexpected error parsing CompleteMultipartUploadResult xml", e);
+            }
+        }
+    }
+
+    static class CompleteHandler extends DefaultHandler {
+        boolean isError = false;
+        String etag = null;
+        String code = null;
+        String message = null;
+        private boolean isRoot = true;
+        private StringBuffer currText = new StringBuffer();
+
+        public void startElement(String uri, String name, String qName, Attributes attrs) {
+            if (this.isRoot) {
+                this.isError = name.equals("Error");
+                this.isRoot = false;
+            }
+        }
+
+        public void endElement(String uri, String name, String qName) {
+            if (name.equals("ETag")) {
+                this.etag = this.currText.toString();
+            } else if (name.equals("Code")) {
+                this.code = this.currText.toString();
+            } else if (name.equals("Message")) {
+                this.message = this.currText.toString();
+            }
+            this.currText = new StringBuffer();
+        }
+
+        public void characters(char ch[], int start, int length) {
+            this.currText.append(ch, start, length);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Returned by AWSAuthConnection.copy().  S3 answers 200 before the copy is
+ * done, so a copy that fails part way arrives as an error document in a 200
+ * response; check errorCode as well as the response code.  The error
+ * document of a failed response is read into errorCode as well.
+ */
+public class CopyObjectResponse extends Response {
+    /**
+     * The ETag of the new object.  This will be null if the request fails.
+     */
+    public String etag = null;
+
+    /**
+     * The time the new object was written, as S3 formats it.  This will be
+     * null if the request fails.
+     */
+    public String lastModified = null;
+
+    /**
+     * The S3 error code if the copy failed, either after a 200 response or
+     * with an error response, otherwise null.
+     */
+    public String errorCode = null;
+
+    /**
+     * The S3 error message that goes with errorCode.
+     */
+    public String errorMessage = null;
+
+    /**
+     * The bucket a NoSuchBucket error names, or null if it names none.
+     */
+    public String errorBucketName = null;
+
+    public CopyObjectResponse(HttpURLConnection connection) throws IOException {
+        super(connection);
+        if (connection.getResponseCode() < 400) {
+            try {
+                XMLReader xr = Utils.createXMLReader();
+                CopyHandler handler = new CopyHandler();
+                xr.setContentHandler(handler);
+                xr.setErrorHandler(handler);
+
+                xr.parse(new InputSource(connection.getInputStream()));
+                if (handler.isError) {
+                    this.errorCode = handler.code;
+                    this.errorMessage = handler.message;
+                } else {
+                    this.etag = handler.etag;
+                    this.lastModified = handler.lastModified;
+                }
+            } catch (SAXException e) {
+                throw new RuntimeException("Unexpected error parsing CopyObjectResult xml", e);
+            }
+        } else {
+            InputStream in = connection.getErrorStream();
+            if (in != null) {
+                try {
+                    XMLReader xr = Utils.createXMLReader();
+                    CopyHandler handler = new CopyHandler();
+                    xr.setContentHandler(handler);
+                    xr.setErrorHandler(handler);
+
+                    xr.parse(new InputSource(in));
+                    this.errorCode = handler.code;
+                    this.errorMessage = handler.message;
+                    this.errorBucketName = handler.bucketName;
+                } catch (SAXException e) {
+                    // not an S3 error document, the response code will do
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    static class CopyHandler extends CompleteMultipartUploadResponse.CompleteHandler {
+        String lastModified = null;
+        String bucketName = null;
+        private StringBuffer currText = new StringBuffer();
+
+        public void endElement(String uri, String name, String qName) {
+            if (name.equals("LastModified")) {
+                this.lastModified = this.currText.toString();
+            } else if (name.equals("BucketName")) {
+                this.bucketName = this.currText.toString();
+            }
+            this.currText = new StringBuffer();
+            super.endElement(uri, name, qName);
+        }
+
+        public void characters(char ch[], int start, int length) {
+            this.currText.append(ch, start, length);
+            super.characters(ch, start, length);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Returned by AWSAuthConnection.deleteObjects().  S3 answers 200 even if
+ * some of the keys could not be deleted; those are listed in failures.
+ */
+public class DeleteObjectsResponse extends Response {
+    /**
+     * The keys that were deleted, empty if the request was quiet.  This will
+     * be null if the request fails.
+     */
+    public List deleted = null;
+
+    /**
+     * A list of DeleteObjectsResponse.Failure objects, one for each key that
+     * could not be deleted.  This will be null if the request fails.
+     */
+    public List<Failure> failures = null;
+
+    public DeleteObjectsResponse(HttpURLConnection connection) throws IOException {
+        super(connection);
+        if (connection.getResponseCode() < 400) {
+            try {
+                XMLReader xr = Utils.createXMLReader();
+                DeleteResultHandler handler = new DeleteResultHandler();
+                xr.setContentHandler(handler);
+                xr.setErrorHandler(handler);
+
+                xr.parse(new InputSource(connection.getInputStream()));
+                this.deleted = handler.deleted;
+                this.failures = handler.failures;
+            } catch (SAXException e) {
+                throw new RuntimeException("Unexpected error parsing DeleteResult xml", e);
+            }
+        }
+    }
+
+    /**
+     * A key that could not be deleted, and why.
+     */
+    public static class Failure {
+        /**
+         * The key that could not be deleted.
+         */
+        public String key;
+
+        /**
+         * The S3 error code, such as AccessDenied.
+         */
+        public String code;
+
+        /**
+         * The S3 error message that goes with code.
+         */
+        public String message;
+    }
+
+    static class DeleteResultHandler extends DefaultHandler {
+        private List deleted = new ArrayList();
+        private List<Failure> failures = new ArrayList<Failure>();
+        private Failure currFailure = null;
+        private StringBuffer currText = new StringBuffer();
+
+        public void startElement(String uri, String name, String qName, Attributes attrs) {
+            if (name.equals("Error")) {
+                this.currFailure = new Failure();
+            }
+            this.currText = new StringBuffer();
+        }
+
+        public void endElement(String uri, String name, String qName) {
+            if (name.equals("Key")) {
+                if (this.currFailure != null) {
+                    this.currFailure.key = this.currText.toString();
+                } else {
+                    this.deleted.add(this.currText.toString());
+                }
+            } else if (name.equals("Code") && this.currFailure != null) {
+                this.currFailure.code = this.currText.toString();
+            } else if (name.equals("Message") && this.currFailure != null) {
+                this.currFailure.message = this.currText.toString();
+            } else if (name.equals("Error")) {
+                this.failures.add(this.currFailure);
+                this.currFailure = null;
+            }
+            this.currText = new StringBuffer();
+        }
+
+        public void characters(char ch[], int start, int length) {
+            this.currText.append(ch, start, length);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the addresses host names resolve to, so that opening a connection
+ * doesn't wait for DNS every time. A name is resolved again once its entry is
+ * older than the time to live, or after a connection to it failed, so a node
+ * that moved or was replaced is picked up. A name with several addresses
+ * hands them out in turn.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class DnsCache {
+
+	/** Default number of milliseconds an entry is used for */
+	public static final long DEFAULT_TTL = 60000;
+
+	/** The cache used by the connection pools */
+	private static final DnsCache defaultCache = new DnsCache(DEFAULT_TTL);
+
+	private final long ttl;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Create a new DNS cache.
+	 * 
+	 * @param ttl
+	 *            The number of milliseconds an entry is used for.
+	 */
+	public DnsCache(long ttl) {
+		if (ttl < 0) {
+			throw new IllegalArgumentException("ttl must be >= 0");
+		}
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Returns the cache used by the connection pools.
+	 */
+	public static DnsCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * Returns an address of the given host, resolving it if it isn't cached
+	 * or its entry has expired.
+	 * 
+	 * @param host
+	 *            The host name or address literal.
+	 */
+	public InetAddress resolve(String host) throws UnknownHostException {
+		Entry entry = entries.get(host);
+		long now = System.currentTimeMillis();
+		if (entry == null || now - entry.resolved >= ttl) {
+			entry = new Entry(InetAddress.getAllByName(host), now);
+			entries.put(host, entry);
+		}
+		return entry.next();
+	}
+
+	/**
+	 * Drops the entry of a host, so that it is resolved again the next time.
+	 * 
+	 * @param host
+	 *            The host name.
+	 */
+	public void invalidate(String host) {
+		entries.remove(host);
+	}
+
+	/**
+	 * The addresses of one host.
+	 */
+	private static class Entry {
+		private final InetAddress[] addresses;
+
+		final long resolved;
+
+		private int next;
+
+		Entry(InetAddress[] addresses, long resolved) {
+			this.addresses = addresses;
+			this.resolved = resolved;
+		}
+
+		synchronized InetAddress next() {
+			InetAddress address = addresses[next];
+			next = (next + 1) % addresses.length;
+			return address;
+		}
+	}
+}
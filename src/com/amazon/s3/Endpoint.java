@@ -0,0 +1,114 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A host and port requests can be sent to, with the number of requests it
+ * has outstanding and whether it failed recently.
+ * 
+ * @see EndpointGroup
+ */
+public class Endpoint {
+
+	private final String host;
+
+	private final int port;
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	private volatile long downUntil;
+
+	public Endpoint(String host, int port) {
+		if (host == null || host.length() == 0) {
+			throw new IllegalArgumentException("host may not be empty");
+		}
+		this.host = host;
+		this.port = port;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the number of requests sent to this endpoint that haven't had a
+	 * response yet.
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * Returns true if a request to this endpoint failed within the last
+	 * EndpointGroup.FAILOVER_MILLIS.
+	 */
+	public boolean isDown() {
+		return System.currentTimeMillis() < downUntil;
+	}
+
+	/**
+	 * Counts a request as sent.
+	 */
+	void begin() {
+		outstanding.incrementAndGet();
+	}
+
+	/**
+	 * Counts a request as answered, and marks the endpoint down for a while
+	 * if it failed.
+	 * 
+	 * @param status
+	 *            The HTTP status code of the response, 0 if no response
+	 *            arrived, or -1 if the request was cancelled.
+	 */
+	void end(int status) {
+		outstanding.decrementAndGet();
+		if (status < 0) {
+			return;
+		}
+		if (status == 0 || (status >= 500 && status != 501 && status != 503)) {
+			downUntil = System.currentTimeMillis()
+					+ EndpointGroup.FAILOVER_MILLIS;
+			DnsCache.getDefault().invalidate(host);
+		} else {
+			downUntil = 0;
+		}
+	}
+
+	long getDownUntil() {
+		return downUntil;
+	}
+
+	/**
+	 * Returns host:port.
+	 */
+	public String toString() {
+		return host + ":" + port;
+	}
+}
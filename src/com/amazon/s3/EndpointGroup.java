@@ -0,0 +1,145 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The S3 compatible nodes an AWSAuthConnection spreads its requests over.
+ * Each request goes to the endpoint with the fewest requests outstanding, so
+ * a slow node gets less work. An endpoint that failed a request, or whose
+ * circuit is open, is passed over until FAILOVER_MILLIS have gone by; a
+ * retry of the failed request goes to another node. When every endpoint is
+ * down requests go to the one that failed longest ago.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class EndpointGroup {
+
+	/** Milliseconds an endpoint is passed over after a failed request */
+	public static final long FAILOVER_MILLIS = 2000;
+
+	private final List<Endpoint> endpoints;
+
+	/** Where to start looking, so ties are spread over the endpoints */
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Create a new endpoint group.
+	 * 
+	 * @param endpoints
+	 *            The endpoints [at least one]
+	 */
+	public EndpointGroup(List<Endpoint> endpoints) {
+		if (endpoints == null || endpoints.isEmpty()) {
+			throw new IllegalArgumentException("need at least one endpoint");
+		}
+		this.endpoints = Collections.unmodifiableList(new ArrayList<Endpoint>(
+				endpoints));
+	}
+
+	/**
+	 * Parses a comma separated list of host[:port] endpoints.
+	 * 
+	 * @param spec
+	 *            The list, for example "node1:8080,node2:8080".
+	 * @param defaultPort
+	 *            The port of endpoints without one.
+	 */
+	public static EndpointGroup parse(String spec, int defaultPort) {
+		List<Endpoint> endpoints = new ArrayList<Endpoint>();
+		StringTokenizer st = new StringTokenizer(spec, ", ");
+		while (st.hasMoreTokens()) {
+			String token = st.nextToken();
+			int colon = token.lastIndexOf(':');
+			if (colon == -1 || token.indexOf(']', colon) != -1) {
+				endpoints.add(new Endpoint(token, defaultPort));
+			} else {
+				try {
+					endpoints.add(new Endpoint(token.substring(0, colon),
+							Integer.parseInt(token.substring(colon + 1))));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("invalid port in '"
+							+ token + "'");
+				}
+			}
+		}
+		return new EndpointGroup(endpoints);
+	}
+
+	/**
+	 * Returns the endpoints.
+	 */
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	public int size() {
+		return endpoints.size();
+	}
+
+	/**
+	 * Returns the endpoint to send the next request to.
+	 * 
+	 * @param breaker
+	 *            The breaker whose open circuits to pass over (can be null).
+	 * @param avoid
+	 *            An endpoint to use only if no other is up, for example the
+	 *            one a hedged request was already sent to (can be null).
+	 */
+	public Endpoint choose(CircuitBreaker breaker, Endpoint avoid) {
+		int size = endpoints.size();
+		if (size == 1) {
+			return endpoints.get(0);
+		}
+
+		int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+		Endpoint best = null;
+		Endpoint fallback = null;
+		for (int i = 0; i < size; i++) {
+			Endpoint endpoint = endpoints.get((start + i) % size);
+			boolean up = endpoint != avoid
+					&& !endpoint.isDown()
+					&& (breaker == null || breaker.getState(endpoint
+							.toString()) != CircuitBreaker.State.OPEN);
+			if (up) {
+				if (best == null
+						|| endpoint.getOutstanding() < best.getOutstanding()) {
+					best = endpoint;
+				}
+			} else if (endpoint != avoid
+					&& (fallback == null || endpoint.getDownUntil() < fallback
+							.getDownUntil())) {
+				fallback = endpoint;
+			}
+		}
+		if (best != null) {
+			return best;
+		}
+		return fallback != null ? fallback : avoid;
+	}
+}
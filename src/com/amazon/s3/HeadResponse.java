@@ -0,0 +1,87 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A Response object returned from AWSAuthConnection.head(). Exposes what S3
+ * knows about an object or bucket without its data, which a HEAD request
+ * never transfers.
+ */
+public class HeadResponse extends Response {
+	/**
+	 * All the response headers, a Map from String to List of Strings, or null
+	 * if the request failed.
+	 */
+	public Map headers;
+
+	/**
+	 * The object's metadata, without the x-amz-meta- prefix, or null if the
+	 * request failed.
+	 */
+	public Map metadata;
+
+	/** The size of the object in bytes, or -1 if unknown */
+	public long contentLength = -1;
+
+	public String contentType;
+
+	public String eTag;
+
+	public String lastModified;
+
+	public HeadResponse(HttpURLConnection connection) throws IOException {
+		super(connection);
+		if (connection.getResponseCode() < 400) {
+			headers = new TreeMap();
+			metadata = new TreeMap();
+			Map fields = connection.getHeaderFields();
+			for (Iterator i = fields.keySet().iterator(); i.hasNext();) {
+				String key = (String) i.next();
+				if (key == null) {
+					continue;
+				}
+				headers.put(key, fields.get(key));
+				if (key.toLowerCase().startsWith(Utils.METADATA_PREFIX)) {
+					metadata.put(key.substring(Utils.METADATA_PREFIX.length()),
+							fields.get(key));
+				}
+			}
+			contentLength = connection.getContentLengthLong();
+			contentType = connection.getContentType();
+			eTag = connection.getHeaderField("ETag");
+			lastModified = connection.getHeaderField("Last-Modified");
+
+			// there is no body, but this lets a keep-alive connection be
+			// reused
+			InputStream in = connection.getInputStream();
+			in.close();
+		}
+	}
+}
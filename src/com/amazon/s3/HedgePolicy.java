@@ -0,0 +1,170 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settings and statistics for hedged GET requests. When an AWSAuthConnection
+ * has a HedgePolicy, every GET whose response hasn't started to arrive within
+ * the given percentile of recently observed response times is sent a second
+ * time. Whichever copy answers first is used and the other one is
+ * disconnected, so a single slow server doesn't set the tail latency.
+ * <p>
+ * Response times are kept for the last WINDOW requests. Until MIN_SAMPLES
+ * have been seen, requests are not hedged.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads
+ * and may be shared between connections.
+ */
+public class HedgePolicy {
+
+	/** Number of recent response times the percentile is taken from */
+	public static final int WINDOW = 256;
+
+	/** Number of response times needed before requests are hedged */
+	public static final int MIN_SAMPLES = 20;
+
+	/** Never hedge sooner than this many milliseconds */
+	public static final long MIN_DELAY = 5;
+
+	private final double percentile;
+
+	private final long[] samples = new long[WINDOW];
+
+	private int sampleCount;
+
+	private int nextSample;
+
+	/** The hedge delay in nanoseconds, or -1 if it needs to be recomputed */
+	private long cachedDelay = -1;
+
+	private final AtomicLong requestCount = new AtomicLong();
+
+	private final AtomicLong hedgeCount = new AtomicLong();
+
+	private final AtomicLong hedgeWinCount = new AtomicLong();
+
+	/**
+	 * Create a new hedge policy.
+	 * 
+	 * @param percentile
+	 *            The percentile (between 50 and 100, exclusive) of recent
+	 *            response times after which a request is sent again. At 95,
+	 *            about one request in twenty is hedged.
+	 */
+	public HedgePolicy(double percentile) {
+		if (percentile < 50 || percentile >= 100) {
+			throw new IllegalArgumentException(
+					"percentile must be between 50 and 100");
+		}
+		this.percentile = percentile;
+	}
+
+	public double getPercentile() {
+		return this.percentile;
+	}
+
+	/**
+	 * Returns the number of nanoseconds to wait for a response before sending
+	 * the request again, or -1 if there aren't enough samples yet.
+	 */
+	public synchronized long getHedgeDelay() {
+		if (sampleCount < MIN_SAMPLES) {
+			return -1;
+		}
+		if (cachedDelay == -1) {
+			long[] sorted = Arrays.copyOf(samples, sampleCount);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100 * sampleCount) - 1;
+			cachedDelay = Math.max(sorted[Math.max(index, 0)],
+					MIN_DELAY * 1000000);
+		}
+		return cachedDelay;
+	}
+
+	/**
+	 * Records the outcome of a GET request.
+	 * 
+	 * @param latency
+	 *            The nanoseconds until the response headers arrived, or -1 if
+	 *            the request failed.
+	 * @param hedged
+	 *            True if a second copy of the request was sent.
+	 * @param hedgeWon
+	 *            True if the second copy answered first.
+	 */
+	void record(long latency, boolean hedged, boolean hedgeWon) {
+		requestCount.incrementAndGet();
+		if (hedged) {
+			hedgeCount.incrementAndGet();
+		}
+		if (hedgeWon) {
+			hedgeWinCount.incrementAndGet();
+		}
+		if (latency >= 0) {
+			synchronized (this) {
+				samples[nextSample] = latency;
+				nextSample = (nextSample + 1) % WINDOW;
+				if (sampleCount < WINDOW) {
+					sampleCount++;
+				}
+				// recomputing on every request would sort the window every
+				// time; a few stale requests don't matter
+				if (nextSample % 16 == 0 || sampleCount < WINDOW) {
+					cachedDelay = -1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of GET requests made under this policy.
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Returns the number of GET requests that were sent a second time.
+	 */
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	/**
+	 * Returns the number of hedged requests whose second copy answered first.
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWinCount.get();
+	}
+
+	/**
+	 * Returns the fraction (0.0 - 1.0) of requests that were hedged.
+	 */
+	public double getHedgeRate() {
+		long requests = requestCount.get();
+		return requests == 0 ? 0.0 : (double) hedgeCount.get() / requests;
+	}
+}
@@ -0,0 +1,399 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sends requests through a java.net.http.HttpClient, which keeps its own pool
+ * of connections. The HttpURLConnections handed out only buffer the request;
+ * it is sent as a whole when the response is first asked for, or, in fixed
+ * length streaming mode, as soon as the output stream is opened, with the
+ * body fed to the client through a bounded pipe.
+ */
+public class HttpClientTransport implements HttpTransport {
+
+	/** Headers the HttpClient sets itself and refuses to take from us */
+	private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>();
+	static {
+		RESTRICTED_HEADERS.add("connection");
+		RESTRICTED_HEADERS.add("content-length");
+		RESTRICTED_HEADERS.add("expect");
+		RESTRICTED_HEADERS.add("host");
+		RESTRICTED_HEADERS.add("upgrade");
+	}
+
+	/** Size of the pipe between a streaming caller and the HttpClient */
+	private static final int PIPE_SIZE = 64 * 1024;
+
+	private final HttpClient client;
+
+	/**
+	 * Create a transport on the HttpClient shared with AsyncAWSAuthConnection.
+	 */
+	public HttpClientTransport() {
+		this(AsyncAWSAuthConnection.getDefaultClient());
+	}
+
+	/**
+	 * Create a transport on the given client.
+	 * 
+	 * @param client
+	 *            The HttpClient used to send the requests. It should be
+	 *            configured for HTTP/1.1.
+	 */
+	public HttpClientTransport(HttpClient client) {
+		this.client = client;
+	}
+
+	public HttpClient getClient() {
+		return this.client;
+	}
+
+	public HttpURLConnection openConnection(URL url) throws IOException {
+		return new Exchange(url, this.client);
+	}
+
+	/**
+	 * A single request/response exchange on the HttpClient.
+	 */
+	private static class Exchange extends HttpClientURLConnection {
+		private final HttpClient client;
+
+		private ByteArrayOutputStream bufferedBody;
+
+		private Pipe pipe;
+
+		private volatile CompletableFuture<HttpResponse<InputStream>> pending;
+
+		private boolean sent;
+
+		private IOException failure;
+
+		Exchange(URL url, HttpClient client) {
+			super(url);
+			this.client = client;
+		}
+
+		public void connect() throws IOException {
+			send();
+		}
+
+		public void disconnect() {
+			CompletableFuture<HttpResponse<InputStream>> p = pending;
+			if (p != null && !p.isDone()) {
+				p.cancel(true);
+			}
+			if (pipe != null) {
+				pipe.close();
+			}
+			if (sent && failure == null) {
+				super.disconnect();
+			}
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			if (!doOutput) {
+				throw new ProtocolException(
+						"cannot write to a URLConnection if doOutput=false - call setDoOutput(true)");
+			}
+			if (pipe != null) {
+				return pipe.sink;
+			}
+			if (sent) {
+				throw new ProtocolException(
+						"Cannot write output after reading input.");
+			}
+			if (bufferedBody != null) {
+				return bufferedBody;
+			}
+
+			long length = fixedContentLengthLong != -1 ? fixedContentLengthLong
+					: fixedContentLength;
+			if (length == -1) {
+				bufferedBody = new ByteArrayOutputStream();
+				return bufferedBody;
+			}
+
+			// fixed length streaming mode, let the client pull the body from a
+			// pipe while the caller writes it
+			Pipe p = new Pipe();
+			HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers
+					.fromPublisher(HttpRequest.BodyPublishers
+							.ofInputStream(() -> p.source), length);
+			pending = client.sendAsync(newRequest(body),
+					HttpResponse.BodyHandlers.ofInputStream());
+			// a failed or early answered request must not leave the writer
+			// blocked on a full pipe
+			pending.whenComplete((response, e) -> p.close());
+			pipe = p;
+			return pipe.sink;
+		}
+
+		public int getResponseCode() throws IOException {
+			send();
+			return super.getResponseCode();
+		}
+
+		public String getResponseMessage() throws IOException {
+			send();
+			return super.getResponseMessage();
+		}
+
+		public InputStream getInputStream() throws IOException {
+			send();
+			return super.getInputStream();
+		}
+
+		public InputStream getErrorStream() {
+			return sendQuietly() ? super.getErrorStream() : null;
+		}
+
+		public String getHeaderField(int n) {
+			return sendQuietly() ? super.getHeaderField(n) : null;
+		}
+
+		public String getHeaderFieldKey(int n) {
+			return sendQuietly() ? super.getHeaderFieldKey(n) : null;
+		}
+
+		public String getHeaderField(String name) {
+			return sendQuietly() ? super.getHeaderField(name) : null;
+		}
+
+		public Map<String, List<String>> getHeaderFields() {
+			return sendQuietly() ? super.getHeaderFields() : Collections
+					.<String, List<String>> emptyMap();
+		}
+
+		private boolean sendQuietly() {
+			try {
+				send();
+				return true;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Sends the request, unless it has been already, and waits for the
+		 * response headers.
+		 */
+		private void send() throws IOException {
+			if (failure != null) {
+				throw failure;
+			}
+			if (sent) {
+				return;
+			}
+			try {
+				if (pipe != null) {
+					pipe.sink.close();
+				} else {
+					HttpRequest.BodyPublisher body;
+					if (bufferedBody != null) {
+						body = HttpRequest.BodyPublishers.ofByteArray(bufferedBody
+								.toByteArray());
+					} else if ("PUT".equals(method) || "POST".equals(method)) {
+						body = HttpRequest.BodyPublishers.ofByteArray(new byte[0]);
+					} else {
+						body = HttpRequest.BodyPublishers.noBody();
+					}
+					pending = client.sendAsync(newRequest(body),
+							HttpResponse.BodyHandlers.ofInputStream());
+				}
+				setResponse(pending.get());
+				sent = true;
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				failure = cause instanceof IOException ? (IOException) cause
+						: new IOException(cause.getMessage(), cause);
+				throw failure;
+			} catch (CancellationException e) {
+				failure = new SocketException("Request cancelled");
+				throw failure;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = new InterruptedIOException("Interrupted waiting for "
+						+ url);
+				throw failure;
+			}
+		}
+
+		private HttpRequest newRequest(HttpRequest.BodyPublisher body)
+				throws IOException {
+			HttpRequest.Builder request;
+			try {
+				request = HttpRequest.newBuilder(url.toURI()).method(method,
+						body);
+			} catch (URISyntaxException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+			if (getReadTimeout() > 0) {
+				request.timeout(Duration.ofMillis(getReadTimeout()));
+			}
+			for (Map.Entry<String, List<String>> entry : getRequestProperties()
+					.entrySet()) {
+				String key = entry.getKey();
+				if (key == null
+						|| RESTRICTED_HEADERS.contains(key.toLowerCase())) {
+					continue;
+				}
+				for (String value : entry.getValue()) {
+					// send exactly what was signed, empty values included
+					request.header(key, value == null ? "" : value);
+				}
+			}
+			return request.build();
+		}
+	}
+
+	/**
+	 * A bounded single producer, single consumer byte pipe. Unlike
+	 * java.io.PipedInputStream it doesn't care which threads read and write,
+	 * which matters since the HttpClient reads on whatever thread its
+	 * executor picks.
+	 */
+	private static class Pipe {
+		private final byte[] buffer = new byte[PIPE_SIZE];
+
+		private int readPos;
+
+		private int count;
+
+		private boolean writerClosed;
+
+		private boolean readerClosed;
+
+		final InputStream source = new InputStream() {
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+			}
+
+			public int read(byte[] buf, int off, int len) throws IOException {
+				return Pipe.this.read(buf, off, len);
+			}
+
+			public void close() {
+				Pipe.this.close();
+			}
+		};
+
+		final OutputStream sink = new OutputStream() {
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			public void write(byte[] buf, int off, int len) throws IOException {
+				Pipe.this.write(buf, off, len);
+			}
+
+			public void close() {
+				closeWriter();
+			}
+		};
+
+		synchronized int read(byte[] buf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			try {
+				while (count == 0 && !writerClosed && !readerClosed) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if (count == 0) {
+				return -1;
+			}
+			int n = Math.min(len, Math.min(count, buffer.length - readPos));
+			System.arraycopy(buffer, readPos, buf, off, n);
+			readPos = (readPos + n) % buffer.length;
+			count -= n;
+			notifyAll();
+			return n;
+		}
+
+		synchronized void write(byte[] buf, int off, int len)
+				throws IOException {
+			while (len > 0) {
+				try {
+					while (count == buffer.length && !readerClosed) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+				if (readerClosed || writerClosed) {
+					throw new IOException("Request body pipe closed");
+				}
+				int writePos = (readPos + count) % buffer.length;
+				int n = Math.min(len, Math.min(buffer.length - count,
+						buffer.length - writePos));
+				System.arraycopy(buf, off, buffer, writePos, n);
+				count += n;
+				off += n;
+				len -= n;
+				notifyAll();
+			}
+		}
+
+		synchronized void closeWriter() {
+			writerClosed = true;
+			notifyAll();
+		}
+
+		synchronized void close() {
+			readerClosed = true;
+			notifyAll();
+		}
+	}
+}
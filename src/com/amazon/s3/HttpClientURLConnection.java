@@ -0,0 +1,218 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Presents a java.net.http.HttpResponse as an HttpURLConnection, so the
+ * responses of the non-blocking HttpClient can be handed to the existing
+ * Response classes.
+ */
+public class HttpClientURLConnection extends HttpURLConnection {
+
+	/** HttpClient doesn't expose the reason phrase, so we supply our own */
+	private static final Map<Integer, String> REASON_PHRASES = new HashMap<Integer, String>();
+	static {
+		REASON_PHRASES.put(100, "Continue");
+		REASON_PHRASES.put(200, "OK");
+		REASON_PHRASES.put(201, "Created");
+		REASON_PHRASES.put(202, "Accepted");
+		REASON_PHRASES.put(204, "No Content");
+		REASON_PHRASES.put(206, "Partial Content");
+		REASON_PHRASES.put(301, "Moved Permanently");
+		REASON_PHRASES.put(302, "Found");
+		REASON_PHRASES.put(304, "Not Modified");
+		REASON_PHRASES.put(307, "Temporary Redirect");
+		REASON_PHRASES.put(400, "Bad Request");
+		REASON_PHRASES.put(403, "Forbidden");
+		REASON_PHRASES.put(404, "Not Found");
+		REASON_PHRASES.put(405, "Method Not Allowed");
+		REASON_PHRASES.put(409, "Conflict");
+		REASON_PHRASES.put(411, "Length Required");
+		REASON_PHRASES.put(412, "Precondition Failed");
+		REASON_PHRASES.put(416, "Requested Range Not Satisfiable");
+		REASON_PHRASES.put(500, "Internal Server Error");
+		REASON_PHRASES.put(501, "Not Implemented");
+		REASON_PHRASES.put(503, "Service Unavailable");
+	}
+
+	/** Error bodies larger than this are truncated */
+	private static final int MAX_ERROR_BODY = 1024 * 1024;
+
+	private HttpResponse<?> response;
+
+	private InputStream body;
+
+	private byte[] errorBody;
+
+	private final List<String> headerKeys = new ArrayList<String>();
+
+	private final List<String> headerValues = new ArrayList<String>();
+
+	/**
+	 * Wraps a response whose body was read into a byte array or is available
+	 * as an InputStream.
+	 * 
+	 * @param url
+	 *            The URL the request was sent to.
+	 * @param response
+	 *            The response, with a byte[] or InputStream body.
+	 */
+	public HttpClientURLConnection(URL url, HttpResponse<?> response) {
+		super(url);
+		setResponse(response);
+	}
+
+	/**
+	 * For subclasses that send the request themselves and call
+	 * setResponse() once it has been answered.
+	 */
+	protected HttpClientURLConnection(URL url) {
+		super(url);
+	}
+
+	protected final void setResponse(HttpResponse<?> response) {
+		this.response = response;
+		this.connected = true;
+		this.responseCode = response.statusCode();
+		this.responseMessage = reasonPhrase(responseCode);
+
+		Object content = response.body();
+		if (content instanceof byte[] && responseCode >= 400) {
+			this.errorBody = (byte[]) content;
+			this.body = new ByteArrayInputStream(errorBody);
+		} else if (content instanceof byte[]) {
+			this.body = new ByteArrayInputStream((byte[]) content);
+		} else if (content instanceof InputStream && responseCode >= 400) {
+			// error documents are small; read them now so the connection goes
+			// back to the client's pool even if nobody looks at them
+			InputStream in = (InputStream) content;
+			try {
+				this.errorBody = in.readNBytes(MAX_ERROR_BODY);
+			} catch (IOException e) {
+				this.errorBody = new byte[0];
+			} finally {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+			this.body = new ByteArrayInputStream(errorBody);
+		} else if (content instanceof InputStream) {
+			this.body = (InputStream) content;
+		} else {
+			this.body = new ByteArrayInputStream(new byte[0]);
+		}
+
+		headerKeys.add(null);
+		headerValues.add("HTTP/1.1 " + responseCode + " " + responseMessage);
+		for (Map.Entry<String, List<String>> entry : response.headers().map()
+				.entrySet()) {
+			for (String value : entry.getValue()) {
+				headerKeys.add(entry.getKey());
+				headerValues.add(value);
+			}
+		}
+	}
+
+	/**
+	 * Returns the reason phrase for an HTTP status code.
+	 */
+	static String reasonPhrase(int code) {
+		String phrase = REASON_PHRASES.get(code);
+		return phrase != null ? phrase : "";
+	}
+
+	public void connect() throws IOException {
+		// the exchange has already happened
+	}
+
+	public void disconnect() {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	public boolean usingProxy() {
+		return false;
+	}
+
+	public int getResponseCode() throws IOException {
+		return responseCode;
+	}
+
+	public String getResponseMessage() throws IOException {
+		return responseMessage;
+	}
+
+	public InputStream getInputStream() throws IOException {
+		if (responseCode >= 400) {
+			if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+				throw new FileNotFoundException(url.toString());
+			}
+			throw new IOException("Server returned HTTP response code: "
+					+ responseCode + " for URL: " + url);
+		}
+		return body;
+	}
+
+	public InputStream getErrorStream() {
+		return errorBody != null ? new ByteArrayInputStream(errorBody) : null;
+	}
+
+	public String getHeaderField(int n) {
+		return n >= 0 && n < headerValues.size() ? headerValues.get(n) : null;
+	}
+
+	public String getHeaderFieldKey(int n) {
+		return n >= 0 && n < headerKeys.size() ? headerKeys.get(n) : null;
+	}
+
+	public String getHeaderField(String name) {
+		return response == null ? null : response.headers().firstValue(name)
+				.orElse(null);
+	}
+
+	public Map<String, List<String>> getHeaderFields() {
+		Map<String, List<String>> fields = new LinkedHashMap<String, List<String>>();
+		fields.put(null, Collections.singletonList(headerValues.get(0)));
+		fields.putAll(response.headers().map());
+		return Collections.unmodifiableMap(fields);
+	}
+}
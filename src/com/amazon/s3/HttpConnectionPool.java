@@ -0,0 +1,649 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A bounded pool of persistent (keep-alive) HTTP connections, kept separately
+ * for every protocol/host/port combination. A host never has more than
+ * maxConnectionsPerHost live sockets; callers asking for more wait for one to
+ * be released. Idle sockets are evicted after idleTimeout milliseconds and are
+ * health checked before they are handed out again.
+ * <p>
+ * As an HttpTransport the pool hands out PooledHttpURLConnections, which speak
+ * HTTP/1.1 over the pooled sockets themselves.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class HttpConnectionPool implements HttpTransport {
+
+	/** Default maximum number of live connections to a single host */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+	/** Default number of milliseconds an idle connection is kept open */
+	public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+	/**
+	 * Idle connections used more recently than this many milliseconds ago
+	 * skip the blocking part of the health check. On a live connection the
+	 * probe always waits out its timeout, which is at least a millisecond per
+	 * request on serial workloads, while servers keep idle connections open
+	 * for several seconds; a buffered request that still meets a closed
+	 * connection is retried once on a new one.
+	 */
+	private static final long VALIDATE_AFTER_IDLE = 2000;
+
+	/** The pool shared by all AWSAuthConnections that are told to use one */
+	private static final HttpConnectionPool defaultPool = new HttpConnectionPool();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition released = lock.newCondition();
+
+	private final Map<String, HostPool> hosts = new LinkedHashMap<String, HostPool>();
+
+	private int maxConnectionsPerHost;
+
+	private long idleTimeout;
+
+	private long leaseCount;
+
+	private long reuseCount;
+
+	private long openCount;
+
+	private long staleCount;
+
+	private long evictCount;
+
+	public HttpConnectionPool() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Create a new connection pool.
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            The maximum number of live (leased plus idle) connections to
+	 *            keep to a single host.
+	 * @param idleTimeout
+	 *            The number of milliseconds after which an unused connection
+	 *            is closed.
+	 */
+	public HttpConnectionPool(int maxConnectionsPerHost, long idleTimeout) {
+		setMaxConnectionsPerHost(maxConnectionsPerHost);
+		setIdleTimeout(idleTimeout);
+	}
+
+	/**
+	 * Returns the pool shared between all AWSAuthConnections that use a pool
+	 * without one of their own.
+	 */
+	public static HttpConnectionPool getDefault() {
+		return defaultPool;
+	}
+
+	public int getMaxConnectionsPerHost() {
+		lock.lock();
+		try {
+			return maxConnectionsPerHost;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public final void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException(
+					"maxConnectionsPerHost must be >= 1");
+		}
+		lock.lock();
+		try {
+			this.maxConnectionsPerHost = maxConnectionsPerHost;
+			// shrink hosts that are now over the limit and wake up waiters
+			// if it grew
+			for (HostPool host : hosts.values()) {
+				while (!host.idle.isEmpty()
+						&& host.idle.size() + host.leased > maxConnectionsPerHost) {
+					host.idle.removeLast().close();
+					evictCount++;
+				}
+			}
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getIdleTimeout() {
+		lock.lock();
+		try {
+			return idleTimeout;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public final void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException("idleTimeout must be >= 0");
+		}
+		lock.lock();
+		try {
+			this.idleTimeout = idleTimeout;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public HttpURLConnection openConnection(URL url) throws IOException {
+		return new PooledHttpURLConnection(url, this);
+	}
+
+	/**
+	 * Leases a connection to the given host, reusing an idle one when a
+	 * healthy one is available and opening a new one otherwise.
+	 * 
+	 * @param secure
+	 *            True to use TLS.
+	 * @param host
+	 *            The host to connect to.
+	 * @param port
+	 *            The port to connect to.
+	 * @param connectTimeout
+	 *            The number of milliseconds to wait for a free slot and for
+	 *            the TCP connect to complete (0 waits forever).
+	 * @param readTimeout
+	 *            The socket read timeout in milliseconds (0 waits forever).
+	 */
+	Connection lease(boolean secure, String host, int port, int connectTimeout,
+			int readTimeout) throws IOException {
+		String key = (secure ? "https://" : "http://") + host + ":" + port;
+		long deadline = System.currentTimeMillis() + connectTimeout;
+
+		while (true) {
+			Connection idle = null;
+			lock.lock();
+			try {
+				HostPool pool = hosts.get(key);
+				if (pool == null) {
+					pool = new HostPool();
+					hosts.put(key, pool);
+				}
+				evictExpired();
+
+				if (!pool.idle.isEmpty()) {
+					// most recently used first, it is the least likely to have
+					// been closed by the server
+					idle = pool.idle.removeFirst();
+					pool.leased++;
+				} else if (pool.leased < maxConnectionsPerHost) {
+					pool.leased++;
+					leaseCount++;
+				} else if (connectTimeout <= 0) {
+					released.await();
+					continue;
+				} else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new SocketTimeoutException(
+								"Timed out waiting for a pooled connection to "
+										+ key);
+					}
+					released.await(remaining, TimeUnit.MILLISECONDS);
+					continue;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted waiting for a connection to "
+						+ key);
+			} finally {
+				lock.unlock();
+			}
+
+			if (idle != null) {
+				// health check outside of the lock, it may block briefly
+				boolean healthy = idle.isHealthy();
+				lock.lock();
+				try {
+					leaseCount++;
+					if (healthy) {
+						reuseCount++;
+					} else {
+						staleCount++;
+					}
+				} finally {
+					lock.unlock();
+				}
+				if (healthy) {
+					idle.reused = true;
+					try {
+						idle.setReadTimeout(readTimeout);
+					} catch (IOException e) {
+						idle.close();
+						releaseSlot(key);
+						throw e;
+					}
+					return idle;
+				}
+				// keep the slot and replace the stale connection
+				idle.close();
+			}
+			break;
+		}
+
+		// we hold a slot for this host, connect outside of the lock
+		try {
+			Connection conn = open(key, secure, host, port, connectTimeout);
+			conn.setReadTimeout(readTimeout);
+			lock.lock();
+			try {
+				openCount++;
+			} finally {
+				lock.unlock();
+			}
+			return conn;
+		} catch (IOException e) {
+			releaseSlot(key);
+			throw e;
+		} catch (RuntimeException e) {
+			releaseSlot(key);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a leased connection to the pool.
+	 * 
+	 * @param conn
+	 *            The connection to return.
+	 * @param reusable
+	 *            False if the connection must be closed rather than kept for
+	 *            another request (e.g. the response was not fully read or the
+	 *            server asked for the connection to be closed).
+	 */
+	void release(Connection conn, boolean reusable) {
+		lock.lock();
+		try {
+			HostPool pool = hosts.get(conn.key);
+			pool.leased--;
+			if (reusable && conn.isOpen()
+					&& pool.idle.size() + pool.leased < maxConnectionsPerHost) {
+				conn.lastUsed = System.currentTimeMillis();
+				pool.idle.addFirst(conn);
+			} else {
+				conn.close();
+			}
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes all idle connections that have been unused for longer than the
+	 * idle timeout.
+	 */
+	public void evictIdle() {
+		lock.lock();
+		try {
+			evictExpired();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes all idle connections. Leased connections are closed as they are
+	 * released.
+	 */
+	public void closeIdle() {
+		lock.lock();
+		try {
+			for (HostPool pool : hosts.values()) {
+				while (!pool.idle.isEmpty()) {
+					pool.idle.removeFirst().close();
+					evictCount++;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of open connections, leased and idle, to all hosts.
+	 */
+	public int getLiveCount() {
+		lock.lock();
+		try {
+			int live = 0;
+			for (HostPool pool : hosts.values()) {
+				live += pool.leased + pool.idle.size();
+			}
+			return live;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of idle connections to all hosts.
+	 */
+	public int getIdleCount() {
+		lock.lock();
+		try {
+			int idle = 0;
+			for (HostPool pool : hosts.values()) {
+				idle += pool.idle.size();
+			}
+			return idle;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of connections handed out, new or reused.
+	 */
+	public long getLeaseCount() {
+		lock.lock();
+		try {
+			return leaseCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of leases that were served by an idle connection.
+	 */
+	public long getReuseCount() {
+		lock.lock();
+		try {
+			return reuseCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the fraction (0.0 - 1.0) of leases served by an idle connection.
+	 */
+	public double getReuseRate() {
+		lock.lock();
+		try {
+			return leaseCount == 0 ? 0.0 : (double) reuseCount / leaseCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of new connections opened.
+	 */
+	public long getOpenCount() {
+		lock.lock();
+		try {
+			return openCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of idle connections that failed their health check.
+	 */
+	public long getStaleCount() {
+		lock.lock();
+		try {
+			return staleCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of idle connections closed for being unused too long.
+	 */
+	public long getEvictCount() {
+		lock.lock();
+		try {
+			return evictCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called with the lock held.
+	 */
+	private void evictExpired() {
+		long now = System.currentTimeMillis();
+		for (HostPool pool : hosts.values()) {
+			for (Iterator<Connection> i = pool.idle.iterator(); i.hasNext();) {
+				Connection conn = i.next();
+				if (now - conn.lastUsed > idleTimeout) {
+					i.remove();
+					conn.close();
+					evictCount++;
+				}
+			}
+		}
+	}
+
+	private void releaseSlot(String key) {
+		lock.lock();
+		try {
+			hosts.get(key).leased--;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Opens a new connection, called without the lock held.
+	 * 
+	 * @param key
+	 *            The protocol/host/port key of the connection.
+	 * @param secure
+	 *            True to use TLS.
+	 * @param host
+	 *            The host to connect to.
+	 * @param port
+	 *            The port to connect to.
+	 * @param connectTimeout
+	 *            The TCP connect timeout in milliseconds (0 waits forever).
+	 */
+	Connection open(String key, boolean secure, String host, int port,
+			int connectTimeout) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.connect(resolve(host, port), connectTimeout);
+			if (secure) {
+				SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory
+						.getDefault()).createSocket(socket, host, port, true);
+				SSLParameters params = ssl.getSSLParameters();
+				params.setEndpointIdentificationAlgorithm("HTTPS");
+				ssl.setSSLParameters(params);
+				ssl.startHandshake();
+				socket = ssl;
+			}
+		} catch (IOException e) {
+			socket.close();
+			DnsCache.getDefault().invalidate(host);
+			throw e;
+		}
+		return new SocketConnection(key, socket);
+	}
+
+	/**
+	 * Returns the address to connect to for a host, from the DNS cache.
+	 * 
+	 * @param host
+	 *            The host to connect to.
+	 * @param port
+	 *            The port to connect to.
+	 */
+	static InetSocketAddress resolve(String host, int port)
+			throws IOException {
+		return new InetSocketAddress(DnsCache.getDefault().resolve(host), port);
+	}
+
+	/**
+	 * The connections kept for a single protocol/host/port.
+	 */
+	private static class HostPool {
+		final Deque<Connection> idle = new ArrayDeque<Connection>();
+
+		int leased;
+	}
+
+	/**
+	 * A single pooled connection and its buffered streams.
+	 */
+	abstract static class Connection {
+		final String key;
+
+		final InputStream in;
+
+		final OutputStream out;
+
+		long lastUsed;
+
+		/** True if this connection has carried a previous request */
+		boolean reused;
+
+		Connection(String key, InputStream in, OutputStream out) {
+			this.key = key;
+			this.in = in;
+			this.out = out;
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		/**
+		 * Sets the number of milliseconds a read may block (0 waits forever).
+		 */
+		abstract void setReadTimeout(int timeout) throws IOException;
+
+		abstract boolean isOpen();
+
+		/**
+		 * Returns true if this idle connection can carry another request.
+		 */
+		abstract boolean isHealthy();
+
+		abstract void close();
+	}
+
+	/**
+	 * A connection over a plain or TLS java.net.Socket.
+	 */
+	static class SocketConnection extends Connection {
+		final Socket socket;
+
+		SocketConnection(String key, Socket socket) throws IOException {
+			super(key, new BufferedInputStream(socket.getInputStream(), 8192),
+					new BufferedOutputStream(socket.getOutputStream(), 8192));
+			this.socket = socket;
+		}
+
+		void setReadTimeout(int timeout) throws IOException {
+			socket.setSoTimeout(timeout);
+		}
+
+		boolean isOpen() {
+			return !socket.isClosed();
+		}
+
+		/**
+		 * An idle keep-alive connection is healthy if it is still open and has
+		 * nothing to read: a readable EOF means the server closed it, and
+		 * unsolicited bytes mean the previous exchange was not fully consumed.
+		 * Probing for the EOF costs a short blocking read, so it is only done
+		 * for connections idle longer than VALIDATE_AFTER_IDLE.
+		 */
+		boolean isHealthy() {
+			if (socket.isClosed() || socket.isInputShutdown()
+					|| socket.isOutputShutdown()) {
+				return false;
+			}
+			try {
+				if (in.available() > 0) {
+					return false;
+				}
+				if (System.currentTimeMillis() - lastUsed < VALIDATE_AFTER_IDLE) {
+					return true;
+				}
+				int timeout = socket.getSoTimeout();
+				socket.setSoTimeout(1);
+				try {
+					in.mark(1);
+					if (in.read() != -1) {
+						in.reset();
+					}
+					return false;
+				} catch (SocketTimeoutException e) {
+					return true;
+				} finally {
+					socket.setSoTimeout(timeout);
+				}
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
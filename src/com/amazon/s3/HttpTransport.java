@@ -0,0 +1,56 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * The HTTP stack AWSAuthConnection sends its requests through.
+ * <p>
+ * Whatever the implementation, requests are handed out as HttpURLConnections
+ * so the Response classes and their callers don't need to know which stack is
+ * in use. AWSAuthConnection only relies on request methods and properties,
+ * timeouts, buffered or fixed length streaming request bodies, response codes
+ * and headers, and input and error streams.
+ * <p>
+ * Implementations must be safe for concurrent use by multiple threads.
+ * 
+ * @see URLConnectionTransport
+ * @see HttpConnectionPool
+ * @see HttpClientTransport
+ * @see NioConnectionPool
+ */
+public interface HttpTransport {
+
+	/**
+	 * Creates an unconnected HttpURLConnection for the given URL. The request
+	 * is sent when its response (or, in fixed length streaming mode, its
+	 * output stream) is first asked for.
+	 * 
+	 * @param url
+	 *            The URL to send the request to.
+	 */
+	HttpURLConnection openConnection(URL url) throws IOException;
+}
@@ -0,0 +1,75 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Returned by AWSAuthConnection.initiateMultipartUpload().
+ */
+public class InitiateMultipartUploadResponse extends Response {
+    /**
+     * The ID the parts of the upload are sent with.  This will be null if
+     * the request fails.
+     */
+    public String uploadId = null;
+
+    public InitiateMultipartUploadResponse(HttpURLConnection connection) throws IOException {
+        super(connection);
+        if (connection.getResponseCode() < 400) {
+            try {
+                XMLReader xr = Utils.createXMLReader();
+                InitiateHandler handler = new InitiateHandler();
+                xr.setContentHandler(handler);
+                xr.setErrorHandler(handler);
+
+                xr.parse(new InputSource(connection.getInputStream()));
+                this.uploadId = handler.uploadId;
+            } catch (SAXException e) {
+                throw new RuntimeException("Unexpected error parsing InitiateMultipartUploadResult xml", e);
+            }
+        }
+    }
+
+    static class InitiateHandler extends DefaultHandler {
+        String uploadId = null;
+        private StringBuffer currText = new StringBuffer();
+
+        public void endElement(String uri, String name, String qName) {
+            if (name.equals("UploadId")) {
+                this.uploadId = this.currText.toString();
+            }
+            this.currText = new StringBuffer();
+        }
+
+        public void characters(char ch[], int start, int length) {
+            this.currText.append(ch, start, length);
+        }
+    }
+}
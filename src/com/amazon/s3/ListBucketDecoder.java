@@ -0,0 +1,454 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes ListBucketResult documents by scanning their bytes, several times
+ * faster than SAX. There is no XMLReader to create, element names are
+ * compared as bytes, text is only turned into a String for the values that
+ * are kept (ASCII, the common case, without going through a decoder), and
+ * dates and sizes are parsed in place.
+ * <p>
+ * Only the XML that S3 writes is handled: elements, attributes, the
+ * predefined and numeric character references and the XML declaration. A
+ * document with anything else in it (a DOCTYPE, a comment or a CDATA
+ * section) is rejected before any entry has been visited, so the caller can
+ * parse it another way.
+ * <p>
+ * Decoders keep their buffer between pages. Take one with acquire() and give
+ * it back with release(); a decoder is only ever used by one thread at a
+ * time.
+ */
+final class ListBucketDecoder {
+
+	/** Most decoders kept for reuse */
+	private static final int POOL_SIZE = 16;
+
+	/** Largest buffer kept for reuse */
+	private static final int MAX_KEPT_BUFFER = 1024 * 1024;
+
+	private static final ConcurrentLinkedQueue<ListBucketDecoder> POOL = new ConcurrentLinkedQueue<ListBucketDecoder>();
+
+	private static final AtomicInteger POOLED = new AtomicInteger();
+
+	private static final byte[] CONTENTS = bytes("Contents");
+
+	private static final byte[] KEY = bytes("Key");
+
+	private static final byte[] LAST_MODIFIED = bytes("LastModified");
+
+	private static final byte[] ETAG = bytes("ETag");
+
+	private static final byte[] SIZE = bytes("Size");
+
+	private static final byte[] OWNER = bytes("Owner");
+
+	private static final byte[] ID = bytes("ID");
+
+	private static final byte[] DISPLAY_NAME = bytes("DisplayName");
+
+	private static final byte[] STORAGE_CLASS = bytes("StorageClass");
+
+	private static final byte[] IS_TRUNCATED = bytes("IsTruncated");
+
+	private static final byte[] NEXT_MARKER = bytes("NextMarker");
+
+	private static final byte[] COMMON_PREFIXES = bytes("CommonPrefixes");
+
+	private static final byte[] PREFIX = bytes("Prefix");
+
+	private byte[] buf = new byte[64 * 1024];
+
+	private int length;
+
+	private byte[] scratch = new byte[1024];
+
+	/** The common prefixes of the last page decoded */
+	List commonPrefixes;
+
+	/** Whether the last page decoded was truncated */
+	boolean isTruncated;
+
+	/** The next marker of the last page decoded, if it had one */
+	String nextMarker;
+
+	/** The number of entries on the last page decoded */
+	int entryCount;
+
+	/** The key of the last entry on the last page decoded */
+	String lastKey;
+
+	/**
+	 * Takes a decoder from the pool, or makes a new one.
+	 */
+	static ListBucketDecoder acquire() {
+		ListBucketDecoder decoder = POOL.poll();
+		if (decoder == null) {
+			return new ListBucketDecoder();
+		}
+		POOLED.decrementAndGet();
+		return decoder;
+	}
+
+	/**
+	 * Gives a decoder back to the pool.
+	 */
+	static void release(ListBucketDecoder decoder) {
+		if (decoder.buf.length > MAX_KEPT_BUFFER) {
+			return;
+		}
+		if (POOLED.incrementAndGet() > POOL_SIZE) {
+			POOLED.decrementAndGet();
+			return;
+		}
+		POOL.offer(decoder);
+	}
+
+	/**
+	 * Reads a ListBucketResult document and passes its entries to the
+	 * visitor.
+	 * 
+	 * @return False if the document has XML this decoder doesn't handle. No
+	 *         entry has been visited then, and buffered() returns the
+	 *         document.
+	 */
+	boolean decode(InputStream in, ListEntryVisitor visitor)
+			throws IOException {
+		read(in);
+		commonPrefixes = new ArrayList();
+		isTruncated = false;
+		nextMarker = null;
+		entryCount = 0;
+		lastKey = null;
+		for (int i = 0; i + 1 < length; i++) {
+			if (buf[i] == '<' && buf[i + 1] == '!') {
+				return false;
+			}
+		}
+
+		ListEntry entry = null;
+		boolean inCommonPrefixes = false;
+		int textStart = 0;
+		int p = 0;
+		while (true) {
+			int lt = indexOf('<', p);
+			if (lt < 0) {
+				break;
+			}
+			int gt = indexOf('>', lt);
+			if (gt < 0) {
+				throw new IOException("Truncated ListBucket xml");
+			}
+			byte first = buf[lt + 1];
+			if (first == '?') {
+				// the XML declaration
+			} else if (first == '/') {
+				int nameStart = lt + 2;
+				int nameEnd = nameEnd(nameStart, gt);
+				if (entry != null) {
+					if (is(CONTENTS, nameStart, nameEnd)) {
+						entryCount++;
+						lastKey = entry.key;
+						visitor.visit(entry);
+						entry = null;
+					} else if (is(KEY, nameStart, nameEnd)) {
+						entry.key = text(textStart, lt);
+					} else if (is(LAST_MODIFIED, nameStart, nameEnd)) {
+						entry.lastModified = new Date(parseDate(textStart, lt));
+					} else if (is(ETAG, nameStart, nameEnd)) {
+						entry.eTag = text(textStart, lt);
+					} else if (is(SIZE, nameStart, nameEnd)) {
+						entry.size = parseLong(textStart, lt);
+					} else if (is(ID, nameStart, nameEnd)) {
+						if (entry.owner != null) {
+							entry.owner.id = text(textStart, lt);
+						}
+					} else if (is(DISPLAY_NAME, nameStart, nameEnd)) {
+						if (entry.owner != null) {
+							entry.owner.displayName = text(textStart, lt);
+						}
+					} else if (is(STORAGE_CLASS, nameStart, nameEnd)) {
+						entry.storageClass = text(textStart, lt);
+					}
+				} else if (is(IS_TRUNCATED, nameStart, nameEnd)) {
+					isTruncated = text(textStart, lt).trim().equals("true");
+				} else if (is(NEXT_MARKER, nameStart, nameEnd)) {
+					nextMarker = text(textStart, lt);
+				} else if (inCommonPrefixes && is(PREFIX, nameStart, nameEnd)) {
+					commonPrefixes.add(text(textStart, lt));
+				} else if (is(COMMON_PREFIXES, nameStart, nameEnd)) {
+					inCommonPrefixes = false;
+				}
+			} else {
+				int nameStart = lt + 1;
+				int nameEnd = nameEnd(nameStart, gt);
+				if (is(CONTENTS, nameStart, nameEnd)) {
+					entry = new ListEntry();
+				} else if (entry != null && is(OWNER, nameStart, nameEnd)) {
+					entry.owner = new Owner();
+				} else if (is(COMMON_PREFIXES, nameStart, nameEnd)) {
+					inCommonPrefixes = true;
+				}
+			}
+			p = gt + 1;
+			textStart = p;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the document read by the last call to decode().
+	 */
+	InputStream buffered() {
+		return new ByteArrayInputStream(buf, 0, length);
+	}
+
+	private void read(InputStream in) throws IOException {
+		length = 0;
+		int n;
+		while ((n = in.read(buf, length, buf.length - length)) >= 0) {
+			length += n;
+			if (length == buf.length) {
+				byte[] grown = new byte[buf.length * 2];
+				System.arraycopy(buf, 0, grown, 0, length);
+				buf = grown;
+			}
+		}
+	}
+
+	private int indexOf(int b, int from) {
+		for (int i = from; i < length; i++) {
+			if (buf[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the end of the element name starting at start, in a tag ending
+	 * at gt.
+	 */
+	private int nameEnd(int start, int gt) {
+		int i = start;
+		while (i < gt && buf[i] != ' ' && buf[i] != '/' && buf[i] != '\t'
+				&& buf[i] != '\r' && buf[i] != '\n') {
+			i++;
+		}
+		return i;
+	}
+
+	private boolean is(byte[] name, int start, int end) {
+		if (end - start != name.length) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			if (buf[start + i] != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the text between start and end, replacing character
+	 * references.
+	 */
+	private String text(int start, int end) {
+		boolean ascii = true;
+		int amp = -1;
+		for (int i = start; i < end; i++) {
+			byte b = buf[i];
+			if (b < 0) {
+				ascii = false;
+			} else if (b == '&' && amp < 0) {
+				amp = i;
+			}
+		}
+		if (amp < 0) {
+			return new String(buf, start, end - start,
+					ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+		}
+
+		// character references take more bytes than what they stand for
+		if (scratch.length < end - start) {
+			scratch = new byte[Math.max(end - start, scratch.length * 2)];
+		}
+		int n = amp - start;
+		System.arraycopy(buf, start, scratch, 0, n);
+		int i = amp;
+		while (i < end) {
+			byte b = buf[i];
+			if (b != '&') {
+				scratch[n++] = b;
+				i++;
+				continue;
+			}
+			int semi = i + 1;
+			while (semi < end && buf[semi] != ';') {
+				semi++;
+			}
+			if (semi == end) {
+				throw new RuntimeException("Unterminated character reference in ListBucket xml");
+			}
+			int c = reference(i + 1, semi);
+			if (c >= 0x80) {
+				ascii = false;
+				byte[] utf8 = new String(Character.toChars(c))
+						.getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(utf8, 0, scratch, n, utf8.length);
+				n += utf8.length;
+			} else {
+				scratch[n++] = (byte) c;
+			}
+			i = semi + 1;
+		}
+		return new String(scratch, 0, n, ascii ? StandardCharsets.ISO_8859_1
+				: StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the character a reference (without its & and ;) stands for.
+	 */
+	private int reference(int start, int end) {
+		int n = end - start;
+		if (n >= 2 && buf[start] == '#') {
+			boolean hex = buf[start + 1] == 'x';
+			int c = 0;
+			for (int i = start + (hex ? 2 : 1); i < end; i++) {
+				int digit = Character.digit(buf[i], hex ? 16 : 10);
+				if (digit < 0) {
+					throw new RuntimeException("Bad character reference in ListBucket xml");
+				}
+				c = c * (hex ? 16 : 10) + digit;
+			}
+			return c;
+		}
+		if (n == 2 && buf[start] == 'l' && buf[start + 1] == 't') {
+			return '<';
+		} else if (n == 2 && buf[start] == 'g' && buf[start + 1] == 't') {
+			return '>';
+		} else if (n == 3 && buf[start] == 'a' && buf[start + 1] == 'm'
+				&& buf[start + 2] == 'p') {
+			return '&';
+		} else if (n == 4 && buf[start] == 'q' && buf[start + 1] == 'u'
+				&& buf[start + 2] == 'o' && buf[start + 3] == 't') {
+			return '"';
+		} else if (n == 4 && buf[start] == 'a' && buf[start + 1] == 'p'
+				&& buf[start + 2] == 'o' && buf[start + 3] == 's') {
+			return '\'';
+		}
+		throw new RuntimeException("Unknown entity in ListBucket xml");
+	}
+
+	private long parseLong(int start, int end) {
+		if (start == end) {
+			throw new NumberFormatException("Empty Size in ListBucket xml");
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("For input string: \""
+						+ text(start, end) + "\"");
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a date like 2006-03-18T22:24:35.000Z to milliseconds since the
+	 * epoch. The fraction of a second is optional.
+	 */
+	private long parseDate(int start, int end) {
+		int n = end - start;
+		if (n < 20 || buf[start + 4] != '-' || buf[start + 7] != '-'
+				|| buf[start + 10] != 'T' || buf[start + 13] != ':'
+				|| buf[start + 16] != ':' || buf[end - 1] != 'Z') {
+			throw new RuntimeException("Unexpected date format in list bucket output");
+		}
+		int year = digits(start, 4);
+		int month = digits(start + 5, 2);
+		int day = digits(start + 8, 2);
+		int hour = digits(start + 11, 2);
+		int minute = digits(start + 14, 2);
+		int second = digits(start + 17, 2);
+		int millis = 0;
+		if (n > 20) {
+			if (buf[start + 19] != '.' || n > 24) {
+				throw new RuntimeException("Unexpected date format in list bucket output");
+			}
+			int places = n - 21;
+			millis = digits(start + 20, places);
+			for (int i = places; i < 3; i++) {
+				millis *= 10;
+			}
+		}
+		long days = daysFromCivil(year, month, day);
+		return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000
+				+ millis;
+	}
+
+	private int digits(int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new RuntimeException("Unexpected date format in list bucket output");
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		if (month <= 2) {
+			year--;
+		}
+		int era = (year >= 0 ? year : year - 399) / 400;
+		int yearOfEra = year - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day
+				- 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -10,6 +10,7 @@
 package com.amazon.s3;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -35,32 +36,115 @@ public class ListBucketResponse extends Response {
      */
     public List entries = null;
 
+    /**
+     * A List of Strings, the prefixes up to the delimiter of the keys that
+     * were rolled up rather than listed.  Empty if the request had no
+     * delimiter, null if the request fails.
+     */
+    public List commonPrefixes = null;
+
+    /**
+     * True if there are more keys to list after this page.
+     */
+    public boolean isTruncated = false;
+
+    /**
+     * The marker to list the next page from, if S3 gave one.  S3 only gives
+     * it for requests with a delimiter; otherwise the next page starts after
+     * the last key of this one.
+     */
+    public String nextMarker = null;
+
+    /**
+     * The number of entries on this page, whether they were kept in entries
+     * or passed to a ListEntryVisitor.
+     */
+    public int entryCount = 0;
+
+    /**
+     * The key of the last entry on this page, or null if there were none.
+     */
+    public String lastKey = null;
+
     public ListBucketResponse(HttpURLConnection connection) throws IOException {
+        this(connection, null);
+    }
+
+    /**
+     * Parses a page of a listing, passing each entry to the visitor as soon
+     * as it has been read instead of keeping it.  entries is empty then.
+     */
+    public ListBucketResponse(HttpURLConnection connection, ListEntryVisitor visitor) throws IOException {
         super(connection);
         if (connection.getResponseCode() < 400) {
+            ListBucketDecoder decoder = ListBucketDecoder.acquire();
             try {
-                XMLReader xr = Utils.createXMLReader();
-                ListBucketHandler handler = new ListBucketHandler();
-                xr.setContentHandler(handler);
-                xr.setErrorHandler(handler);
-
-                xr.parse(new InputSource(connection.getInputStream()));
-                this.entries = handler.getEntries();
-            } catch (SAXException e) {
-                throw new RuntimeException("Unexpected error parsing ListBucket xml", e);
+                final List entries = new ArrayList();
+                if (decoder.decode(connection.getInputStream(), visitor != null ? visitor : entries::add)) {
+                    this.entries = entries;
+                    this.commonPrefixes = decoder.commonPrefixes;
+                    this.isTruncated = decoder.isTruncated;
+                    this.nextMarker = decoder.nextMarker;
+                    this.entryCount = decoder.entryCount;
+                    this.lastKey = decoder.lastKey;
+                } else {
+                    // not the plain XML the decoder knows, leave it to SAX
+                    parse(decoder.buffered(), visitor);
+                }
+            } finally {
+                ListBucketDecoder.release(decoder);
+            }
+        }
+    }
+
+    /**
+     * Parses a ListBucketResult document with SAX.
+     */
+    private void parse(InputStream in, ListEntryVisitor visitor) throws IOException {
+        try {
+            XMLReader xr = Utils.createXMLReader();
+            ListBucketHandler handler = new ListBucketHandler(visitor);
+            xr.setContentHandler(handler);
+            xr.setErrorHandler(handler);
+
+            xr.parse(new InputSource(in));
+            this.entries = handler.getEntries();
+            this.commonPrefixes = handler.commonPrefixes;
+            this.isTruncated = handler.isTruncated;
+            this.nextMarker = handler.nextMarker;
+            this.entryCount = handler.entryCount;
+            this.lastKey = handler.lastKey;
+        } catch (SAXException e) {
+            if (e.getException() instanceof IOException) {
+                // thrown by the visitor
+                throw (IOException) e.getException();
             }
+            throw new RuntimeException("Unexpected error parsing ListBucket xml", e);
         }
     }
 
-    class ListBucketHandler extends DefaultHandler {
+    static class ListBucketHandler extends DefaultHandler {
 
         private List entries = null;
+        private List commonPrefixes = new ArrayList();
+        private boolean isTruncated = false;
+        private String nextMarker = null;
+        private boolean inCommonPrefixes = false;
         private ListEntry currEntry = null;
         private StringBuffer currText = null;
         private SimpleDateFormat iso8601Parser = null;
 
+        private ListEntryVisitor visitor = null;
+        private int entryCount = 0;
+        private String lastKey = null;
+
         public ListBucketHandler() {
+            this(null);
+        }
+
+        public ListBucketHandler(ListEntryVisitor visitor) {
             super();
+            this.visitor = visitor;
             entries = new ArrayList();
             this.iso8601Parser = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
             this.iso8601Parser.setTimeZone(new SimpleTimeZone(0, "GMT"));
@@ -80,12 +164,36 @@ public class ListBucketResponse extends Response {
                 this.currEntry = new ListEntry();
             } else if (name.equals("Owner")) {
                 this.currEntry.owner = new Owner();
+            } else if (name.equals("CommonPrefixes")) {
+                this.inCommonPrefixes = true;
             }
+            this.currText = new StringBuffer();
         }
 
-        public void endElement(String uri, String name, String qName) {
+        public void endElement(String uri, String name, String qName) throws SAXException {
             if (name.equals("Contents")) {
-                this.entries.add(this.currEntry);
+                this.entryCount++;
+                this.lastKey = this.currEntry.key;
+                if (this.visitor == null) {
+                    this.entries.add(this.currEntry);
+                } else {
+                    try {
+                        this.visitor.visit(this.currEntry);
+                    } catch (IOException e) {
+                        throw new SAXException(e);
+                    }
+                }
+                this.currEntry = null;
+            } else if (this.currEntry == null) {
+                if (name.equals("IsTruncated")) {
+                    this.isTruncated = this.currText.toString().trim().equals("true");
+                } else if (name.equals("NextMarker")) {
+                    this.nextMarker = this.currText.toString();
+                } else if (name.equals("Prefix") && this.inCommonPrefixes) {
+                    this.commonPrefixes.add(this.currText.toString());
+                } else if (name.equals("CommonPrefixes")) {
+                    this.inCommonPrefixes = false;
+                }
             } else if (name.equals("Key")) {
                 this.currEntry.key = this.currText.toString();
             } else if (name.equals("LastModified")) {
@@ -115,6 +223,10 @@ public class ListBucketResponse extends Response {
         public List getEntries() {
             return this.entries;
         }
+
+        public int getEntryCount() {
+            return this.entryCount;
+        }
     }
 }
 
@@ -0,0 +1,304 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Holds a whole bucket listing in a fraction of the memory a List of
+ * ListEntry takes. Entries are kept in columns instead of objects:
+ * <ul>
+ * <li>keys as UTF-8 in one shared byte array, each stored as the number of
+ * leading bytes it has in common with the key before it plus the bytes that
+ * differ, which is most of them for a sorted listing. Every 16th key is
+ * stored whole so that any key can be rebuilt from the one at most 15 places
+ * before it.</li>
+ * <li>sizes and last modified times in long arrays.</li>
+ * <li>MD5 ETags as 16 bytes each. The few ETags that aren't an MD5, such as
+ * those of multipart uploads, are kept as they are.</li>
+ * <li>storage classes and owners, which hardly vary in a bucket, as an index
+ * into a table of the distinct values.</li>
+ * </ul>
+ * The store is a ListEntryVisitor, so a listing can be parsed straight into
+ * it with AWSAuthConnection.visitBucket(). It reads back as ListEntry
+ * objects: get() builds a new one, while iterating fills in a single
+ * flyweight entry again for each step, which must be copied to be kept.
+ * Entries with the same owner share its Owner object.
+ * <p>
+ * Instances of this class are not safe for concurrent use by multiple
+ * threads.
+ */
+public class ListingStore implements ListEntryVisitor, Iterable<ListEntry> {
+
+	/** Every this many keys, one is stored whole */
+	private static final int RESTART_INTERVAL = 16;
+
+	/** Initial number of entries there is room for */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/** Marks an entry without a last modified time */
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private int count = 0;
+
+	private byte[] keyBytes = new byte[INITIAL_CAPACITY * 16];
+
+	private int keyLength = 0;
+
+	private int[] keyOffsets = new int[INITIAL_CAPACITY + 1];
+
+	private short[] sharedLengths = new short[INITIAL_CAPACITY];
+
+	private long[] sizes = new long[INITIAL_CAPACITY];
+
+	private long[] lastModified = new long[INITIAL_CAPACITY];
+
+	private byte[] eTags = new byte[INITIAL_CAPACITY * 16];
+
+	private final Map<Integer, String> otherETags = new HashMap<Integer, String>();
+
+	private int[] storageClasses = new int[INITIAL_CAPACITY];
+
+	private final List<String> storageClassTable = new ArrayList<String>();
+
+	private final Map<String, Integer> storageClassIndex = new HashMap<String, Integer>();
+
+	private int[] owners = new int[INITIAL_CAPACITY];
+
+	private final List<Owner> ownerTable = new ArrayList<Owner>();
+
+	private final Map<String, Integer> ownerIndex = new HashMap<String, Integer>();
+
+	private byte[] previousKey = new byte[0];
+
+	/**
+	 * Adds an entry at the end of the store. Entries should be added in key
+	 * order, as a listing returns them, for the keys to compress well.
+	 */
+	public void add(ListEntry entry) {
+		if (count == sizes.length) {
+			grow();
+		}
+		int i = count;
+
+		byte[] key = (entry.key != null ? entry.key : "")
+				.getBytes(StandardCharsets.UTF_8);
+		int shared = 0;
+		if (i % RESTART_INTERVAL != 0) {
+			int max = Math.min(Short.MAX_VALUE, Math.min(key.length,
+					previousKey.length));
+			while (shared < max && key[shared] == previousKey[shared]) {
+				shared++;
+			}
+		}
+		int suffix = key.length - shared;
+		if (keyLength + suffix > keyBytes.length) {
+			keyBytes = Arrays.copyOf(keyBytes, Math.max(keyBytes.length * 2,
+					keyLength + suffix));
+		}
+		System.arraycopy(key, shared, keyBytes, keyLength, suffix);
+		keyOffsets[i] = keyLength;
+		keyLength += suffix;
+		keyOffsets[i + 1] = keyLength;
+		sharedLengths[i] = (short) shared;
+		previousKey = key;
+
+		sizes[i] = entry.size;
+		lastModified[i] = entry.lastModified != null ? entry.lastModified
+				.getTime() : NO_DATE;
+		if (!packETag(entry.eTag, i * 16)) {
+			otherETags.put(Integer.valueOf(i), entry.eTag);
+		}
+		storageClasses[i] = storageClassIndex(entry.storageClass);
+		owners[i] = ownerIndex(entry.owner);
+		count++;
+	}
+
+	/**
+	 * Adds the entry; the store as a visitor of a listing.
+	 */
+	public void visit(ListEntry entry) {
+		add(entry);
+	}
+
+	/**
+	 * Returns the number of entries in the store.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns a new ListEntry with the values of the entry at the given
+	 * index.
+	 */
+	public ListEntry get(int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ count);
+		}
+		byte[] key = new byte[0];
+		int length = 0;
+		for (int i = index - index % RESTART_INTERVAL; i <= index; i++) {
+			int suffix = keyOffsets[i + 1] - keyOffsets[i];
+			length = sharedLengths[i] + suffix;
+			if (length > key.length) {
+				key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+			}
+			System.arraycopy(keyBytes, keyOffsets[i], key, sharedLengths[i],
+					suffix);
+		}
+		ListEntry entry = new ListEntry();
+		fill(entry, index, new String(key, 0, length, StandardCharsets.UTF_8));
+		return entry;
+	}
+
+	/**
+	 * Iterates over the entries in the order they were added. The same
+	 * ListEntry, and the same Date in it, is returned by every call to
+	 * next(); only the values change.
+	 */
+	public Iterator<ListEntry> iterator() {
+		return new Iterator<ListEntry>() {
+			private final ListEntry flyweight = new ListEntry();
+
+			private byte[] key = new byte[256];
+
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < count;
+			}
+
+			public ListEntry next() {
+				if (next >= count) {
+					throw new NoSuchElementException();
+				}
+				int i = next++;
+				int suffix = keyOffsets[i + 1] - keyOffsets[i];
+				int length = sharedLengths[i] + suffix;
+				if (length > key.length) {
+					key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+				}
+				System.arraycopy(keyBytes, keyOffsets[i], key,
+						sharedLengths[i], suffix);
+				fill(flyweight, i, new String(key, 0, length,
+						StandardCharsets.UTF_8));
+				return flyweight;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Sets the fields of entry to the values of the entry at index, reusing
+	 * the Date the entry already has.
+	 */
+	private void fill(ListEntry entry, int index, String key) {
+		entry.key = key;
+		entry.size = sizes[index];
+		if (lastModified[index] == NO_DATE) {
+			entry.lastModified = null;
+		} else if (entry.lastModified == null) {
+			entry.lastModified = new Date(lastModified[index]);
+		} else {
+			entry.lastModified.setTime(lastModified[index]);
+		}
+		Integer boxed = Integer.valueOf(index);
+		entry.eTag = otherETags.containsKey(boxed) ? otherETags.get(boxed)
+				: unpackETag(index * 16);
+		entry.storageClass = storageClassTable.get(storageClasses[index]);
+		entry.owner = ownerTable.get(owners[index]);
+	}
+
+	/**
+	 * Stores a quoted MD5 ETag as 16 bytes, or returns false if it isn't one.
+	 */
+	private boolean packETag(String eTag, int offset) {
+		if (eTag == null || eTag.length() != 34 || eTag.charAt(0) != '"'
+				|| eTag.charAt(33) != '"') {
+			return false;
+		}
+		for (int i = 0; i < 16; i++) {
+			int high = Character.digit(eTag.charAt(1 + i * 2), 16);
+			int low = Character.digit(eTag.charAt(2 + i * 2), 16);
+			// upper case hex wouldn't come back the same
+			if (high < 0 || low < 0
+					|| Character.isUpperCase(eTag.charAt(1 + i * 2))
+					|| Character.isUpperCase(eTag.charAt(2 + i * 2))) {
+				return false;
+			}
+			eTags[offset + i] = (byte) (high << 4 | low);
+		}
+		return true;
+	}
+
+	private String unpackETag(int offset) {
+		return "\"" + Utils.toHex(Arrays.copyOfRange(eTags, offset,
+				offset + 16)) + "\"";
+	}
+
+	private int storageClassIndex(String storageClass) {
+		Integer index = storageClassIndex.get(storageClass);
+		if (index == null) {
+			index = Integer.valueOf(storageClassTable.size());
+			storageClassTable.add(storageClass);
+			storageClassIndex.put(storageClass, index);
+		}
+		return index.intValue();
+	}
+
+	private int ownerIndex(Owner owner) {
+		String name = owner == null ? null : owner.id + "\n"
+				+ owner.displayName;
+		Integer index = ownerIndex.get(name);
+		if (index == null) {
+			index = Integer.valueOf(ownerTable.size());
+			ownerTable.add(owner);
+			ownerIndex.put(name, index);
+		}
+		return index.intValue();
+	}
+
+	private void grow() {
+		int capacity = sizes.length * 2;
+		keyOffsets = Arrays.copyOf(keyOffsets, capacity + 1);
+		sharedLengths = Arrays.copyOf(sharedLengths, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		lastModified = Arrays.copyOf(lastModified, capacity);
+		eTags = Arrays.copyOf(eTags, capacity * 16);
+		storageClasses = Arrays.copyOf(storageClasses, capacity);
+		owners = Arrays.copyOf(owners, capacity);
+	}
+}
@@ -0,0 +1,358 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A connection pool whose plain HTTP connections are non-blocking NIO
+ * SocketChannels rather than java.net.Sockets. Responses are read into a
+ * direct buffer straight from the channel, and a pooled connection can be
+ * checked for a server side close without the blocking probe read that
+ * sockets need.
+ * <p>
+ * TLS is not implemented on top of the channels; https requests fall back to
+ * the socket connections of HttpConnectionPool.
+ */
+public class NioConnectionPool extends HttpConnectionPool {
+
+	/** Size of the per connection receive buffer */
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	/** Size of the per connection send buffer */
+	private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+	public NioConnectionPool() {
+		super();
+	}
+
+	/**
+	 * Create a new NIO connection pool.
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            The maximum number of live (leased plus idle) connections to
+	 *            keep to a single host.
+	 * @param idleTimeout
+	 *            The number of milliseconds after which an unused connection
+	 *            is closed.
+	 */
+	public NioConnectionPool(int maxConnectionsPerHost, long idleTimeout) {
+		super(maxConnectionsPerHost, idleTimeout);
+	}
+
+	Connection open(String key, boolean secure, String host, int port,
+			int connectTimeout) throws IOException {
+		if (secure) {
+			return super.open(key, secure, host, port, connectTimeout);
+		}
+		SocketChannel channel = SocketChannel.open();
+		Selector selector = null;
+		try {
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+			channel.setOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.TRUE);
+			channel.configureBlocking(false);
+			selector = Selector.open();
+			SelectionKey selectionKey = channel.register(selector,
+					SelectionKey.OP_CONNECT);
+			if (!channel.connect(resolve(host, port))) {
+				if (selector.select(connectTimeout) == 0) {
+					throw new SocketTimeoutException("Connect timed out to "
+							+ key);
+				}
+				channel.finishConnect();
+			}
+			selectionKey.interestOps(0);
+			selector.selectedKeys().clear();
+		} catch (IOException e) {
+			channel.close();
+			if (selector != null) {
+				selector.close();
+			}
+			DnsCache.getDefault().invalidate(host);
+			throw e;
+		}
+		return new ChannelConnection(key, channel, selector);
+	}
+
+	/**
+	 * A connection over a non-blocking SocketChannel. Reads and writes wait on
+	 * the connection's own Selector whenever the channel isn't ready.
+	 */
+	static class ChannelConnection extends Connection {
+		final SocketChannel channel;
+
+		final Selector selector;
+
+		final SelectionKey selectionKey;
+
+		int readTimeout;
+
+		ChannelConnection(String key, SocketChannel channel, Selector selector) {
+			this(key, channel, selector, new ChannelIO());
+		}
+
+		private ChannelConnection(String key, SocketChannel channel,
+				Selector selector, ChannelIO io) {
+			super(key, io.in, io.out);
+			this.channel = channel;
+			this.selector = selector;
+			this.selectionKey = channel.keyFor(selector);
+			io.conn = this;
+		}
+
+		void setReadTimeout(int timeout) {
+			this.readTimeout = timeout;
+		}
+
+		boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		/**
+		 * A non-blocking read tells straight away whether the server has
+		 * closed the connection (-1) or sent something unexpected (> 0).
+		 */
+		boolean isHealthy() {
+			if (!channel.isOpen()) {
+				return false;
+			}
+			ChannelInputStream input = (ChannelInputStream) in;
+			if (input.buffer.hasRemaining()) {
+				return false;
+			}
+			try {
+				return input.poll() == 0;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		void close() {
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		/**
+		 * Waits until the channel is ready for the given operation.
+		 */
+		void await(int op, int timeout) throws IOException {
+			try {
+				selectionKey.interestOps(op);
+				if (selector.select(timeout) == 0) {
+					throw new SocketTimeoutException(
+							op == SelectionKey.OP_READ ? "Read timed out"
+									: "Write timed out");
+				}
+				selector.selectedKeys().clear();
+				selectionKey.interestOps(0);
+			} catch (ClosedSelectorException e) {
+				// closed by another thread, e.g. a cancelled hedged request
+				throw new SocketException("Socket closed");
+			} catch (CancelledKeyException e) {
+				throw new SocketException("Socket closed");
+			}
+		}
+	}
+
+	/**
+	 * Ties the streams to their connection, which can't be constructed before
+	 * the streams it is handed.
+	 */
+	private static class ChannelIO {
+		ChannelConnection conn;
+
+		final ChannelInputStream in = new ChannelInputStream(this);
+
+		final ChannelOutputStream out = new ChannelOutputStream(this);
+	}
+
+	private static class ChannelInputStream extends InputStream {
+		private final ChannelIO io;
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+		private int markPosition = -1;
+
+		private int markLimit;
+
+		ChannelInputStream(ChannelIO io) {
+			this.io = io;
+			buffer.flip();
+		}
+
+		public int read() throws IOException {
+			if (!buffer.hasRemaining() && !fill()) {
+				return -1;
+			}
+			return buffer.get() & 0xff;
+		}
+
+		public int read(byte[] buf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining() && !fill()) {
+				return -1;
+			}
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(buf, off, count);
+			return count;
+		}
+
+		public int available() {
+			return buffer.remaining();
+		}
+
+		public boolean markSupported() {
+			return true;
+		}
+
+		public void mark(int readLimit) {
+			markPosition = buffer.position();
+			markLimit = readLimit;
+		}
+
+		public void reset() throws IOException {
+			if (markPosition == -1) {
+				throw new IOException("Resetting to invalid mark");
+			}
+			buffer.position(markPosition);
+		}
+
+		/**
+		 * Reads whatever the channel has into the (empty) buffer, waiting up
+		 * to the read timeout for something to arrive. A mark survives the
+		 * refill, within its read limit, by keeping the bytes from the mark on.
+		 */
+		private boolean fill() throws IOException {
+			int consumed = 0;
+			if (markPosition != -1
+					&& buffer.position() - markPosition <= markLimit
+					&& buffer.position() - markPosition < buffer.capacity()) {
+				consumed = buffer.position() - markPosition;
+				buffer.position(markPosition);
+				buffer.compact();
+				markPosition = 0;
+			} else {
+				markPosition = -1;
+				buffer.clear();
+			}
+			try {
+				while (true) {
+					int count = io.conn.channel.read(buffer);
+					if (count > 0) {
+						return true;
+					}
+					if (count == -1) {
+						return false;
+					}
+					io.conn.await(SelectionKey.OP_READ, io.conn.readTimeout);
+				}
+			} finally {
+				buffer.flip();
+				buffer.position(consumed);
+			}
+		}
+
+		/**
+		 * Reads what is available without waiting; used to check idle
+		 * connections.
+		 */
+		int poll() throws IOException {
+			markPosition = -1;
+			buffer.clear();
+			try {
+				return io.conn.channel.read(buffer);
+			} finally {
+				buffer.flip();
+			}
+		}
+	}
+
+	private static class ChannelOutputStream extends OutputStream {
+		private final ChannelIO io;
+
+		private final ByteBuffer buffer = ByteBuffer
+				.allocateDirect(WRITE_BUFFER_SIZE);
+
+		ChannelOutputStream(ChannelIO io) {
+			this.io = io;
+		}
+
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining()) {
+				drain();
+			}
+			buffer.put((byte) b);
+		}
+
+		public void write(byte[] buf, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!buffer.hasRemaining()) {
+					drain();
+				}
+				int count = Math.min(len, buffer.remaining());
+				buffer.put(buf, off, count);
+				off += count;
+				len -= count;
+			}
+		}
+
+		public void flush() throws IOException {
+			drain();
+		}
+
+		private void drain() throws IOException {
+			buffer.flip();
+			try {
+				while (buffer.hasRemaining()) {
+					if (io.conn.channel.write(buffer) == 0) {
+						io.conn.await(SelectionKey.OP_WRITE,
+								io.conn.readTimeout);
+					}
+				}
+			} finally {
+				buffer.compact();
+			}
+		}
+	}
+}
@@ -0,0 +1,426 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Lists a large bucket several requests at a time. A plain listing is
+ * sequential, since each page starts after the last key of the one before.
+ * This lister first lists the prefix with a delimiter to find the "directories"
+ * below it, going a few levels deeper while there are fewer of them than the
+ * concurrency, and then lists each directory on its own virtual thread. The
+ * keys found directly on the levels that were split are listed along the way.
+ * A directory with too many keys or directories directly below it to hold is
+ * not split, and is listed as a whole instead.
+ * <p>
+ * In order, the entries are passed to the visitor in key order, exactly as a
+ * plain listing would; each directory only lists a few pages ahead of the
+ * one being visited. Out of order, the entries are visited as the pages
+ * arrive. Either way the visitor is only called from the thread that called
+ * list().
+ * <p>
+ * A bucket whose keys don't contain the delimiter can't be split, and is
+ * listed sequentially.
+ */
+public class ParallelLister {
+
+	/** The delimiter that directories are found with unless told otherwise */
+	public static final String DEFAULT_DELIMITER = "/";
+
+	/** Deepest level of directories that is split */
+	private static final int MAX_DEPTH = 3;
+
+	/** Most pages of one level of a directory that are held to split it */
+	private static final int MAX_SPLIT_PAGES = 4;
+
+	/** Pages each directory lists ahead of the visitor */
+	private static final int PAGES_AHEAD = 2;
+
+	/** Marks the end of a directory's pages */
+	private static final Object END = new Object();
+
+	/** Orders keys and directories by name */
+	private static final Comparator UNIT_ORDER = new Comparator() {
+		public int compare(Object a, Object b) {
+			return name(a).compareTo(name(b));
+		}
+	};
+
+	private final AWSAuthConnection conn;
+
+	private final int concurrency;
+
+	private String delimiter = DEFAULT_DELIMITER;
+
+	/**
+	 * Create a parallel lister.
+	 * 
+	 * @param conn
+	 *            The connection to list with.
+	 * @param concurrency
+	 *            The most list requests in flight at once [>= 1].
+	 */
+	public ParallelLister(AWSAuthConnection conn, int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be >= 1");
+		}
+		this.conn = conn;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Sets the delimiter that separates the levels of directories in keys.
+	 */
+	public void setDelimiter(String delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	public String getDelimiter() {
+		return this.delimiter;
+	}
+
+	/**
+	 * Lists every key with the given prefix.
+	 * 
+	 * @param bucket
+	 *            The name of the bucket to list.
+	 * @param prefix
+	 *            All listed keys will start with this string (can be null).
+	 * @param ordered
+	 *            True to visit the entries in key order.
+	 * @param visitor
+	 *            Receives the entries.
+	 * @throws IOException
+	 *             If a page could not be listed, or thrown by the visitor.
+	 */
+	public void list(String bucket, String prefix, boolean ordered,
+			ListEntryVisitor visitor) throws IOException {
+		List units = split(bucket, prefix == null ? "" : prefix);
+		List<Shard> shards = new ArrayList<Shard>();
+		for (Iterator i = units.iterator(); i.hasNext();) {
+			Object unit = i.next();
+			if (unit instanceof String) {
+				shards.add(new Shard(bucket, (String) unit));
+			}
+		}
+
+		BlockingQueue<Object> shared = ordered ? null
+				: new ArrayBlockingQueue<Object>(concurrency * PAGES_AHEAD);
+		Thread launcher = Thread.ofVirtual().name("list " + bucket).start(
+				() -> launch(shards, shared));
+		try {
+			if (ordered) {
+				Iterator<Shard> next = shards.iterator();
+				for (Iterator i = units.iterator(); i.hasNext();) {
+					Object unit = i.next();
+					if (unit instanceof ListEntry) {
+						visitor.visit((ListEntry) unit);
+						continue;
+					}
+					Shard shard = next.next();
+					Object page;
+					while ((page = take(shard.pages)) != END) {
+						visit((List) page, visitor);
+					}
+					shard.rethrow();
+				}
+			} else {
+				for (Iterator i = units.iterator(); i.hasNext();) {
+					Object unit = i.next();
+					if (unit instanceof ListEntry) {
+						visitor.visit((ListEntry) unit);
+					}
+				}
+				int finished = 0;
+				while (finished < shards.size()) {
+					Object page = take(shared);
+					if (page instanceof Shard) {
+						((Shard) page).rethrow();
+						finished++;
+					} else {
+						visit((List) page, visitor);
+					}
+				}
+			}
+		} finally {
+			launcher.interrupt();
+			for (Shard shard : shards) {
+				shard.stop();
+			}
+		}
+	}
+
+	/**
+	 * Starts the shards in order, at most concurrency at once.
+	 */
+	private void launch(List<Shard> shards, BlockingQueue<Object> shared) {
+		Semaphore running = new Semaphore(concurrency);
+		try {
+			for (Shard shard : shards) {
+				running.acquire();
+				shard.start(running, shared);
+			}
+		} catch (InterruptedException e) {
+			// the listing was abandoned
+		}
+	}
+
+	/**
+	 * Splits the prefix into keys and directories, in key order. The
+	 * directories of each level are listed at once, and a directory found to
+	 * have none below it is not listed again.
+	 */
+	private List split(String bucket, String prefix) throws IOException {
+		List units = new ArrayList();
+		units.add(prefix);
+		if (delimiter == null || concurrency == 1) {
+			return units;
+		}
+		Set<String> leaves = new HashSet<String>();
+		for (int depth = 0; depth < MAX_DEPTH; depth++) {
+			int directories = 0;
+			for (Iterator i = units.iterator(); i.hasNext();) {
+				if (i.next() instanceof String) {
+					directories++;
+				}
+			}
+			if (directories >= concurrency) {
+				break;
+			}
+
+			// fewer directories than the concurrency, so one thread each
+			List<FutureTask<List>> levels = new ArrayList<FutureTask<List>>();
+			for (Iterator i = units.iterator(); i.hasNext();) {
+				Object unit = i.next();
+				FutureTask<List> level = null;
+				if (unit instanceof String && !leaves.contains(unit)) {
+					String directory = (String) unit;
+					level = new FutureTask<List>(() -> children(bucket,
+							directory));
+					Thread.ofVirtual().name("split " + bucket + "/" + directory)
+							.start(level);
+				}
+				levels.add(level);
+			}
+
+			List split = new ArrayList();
+			boolean deeper = false;
+			Iterator<FutureTask<List>> next = levels.iterator();
+			for (Iterator i = units.iterator(); i.hasNext();) {
+				Object unit = i.next();
+				FutureTask<List> level = next.next();
+				List children = level != null ? get(level) : null;
+				if (children != null) {
+					split.addAll(children);
+					deeper = true;
+				} else {
+					if (level != null) {
+						leaves.add((String) unit);
+					}
+					split.add(unit);
+				}
+			}
+			units = split;
+			if (!deeper) {
+				break;
+			}
+		}
+		return units;
+	}
+
+	/**
+	 * Lists one level of a directory, or returns null if it has no
+	 * directories below it, or more than MAX_SPLIT_PAGES pages of keys and
+	 * directories; either way it is left to a single listing.
+	 */
+	private List children(String bucket, String directory) throws IOException {
+		List children = new ArrayList();
+		int listed = 0;
+		try (BucketPages pages = new BucketPages(conn, bucket, directory,
+				delimiter, 0, null)) {
+			while (pages.hasNext()) {
+				if (listed++ == MAX_SPLIT_PAGES) {
+					return null;
+				}
+				ListBucketResponse page = pages.next();
+				if (page.entries == null) {
+					throw failed(bucket, page);
+				}
+				if (children.isEmpty() && page.commonPrefixes.isEmpty()) {
+					// nothing to split, leave it to a single listing
+					return null;
+				}
+				children.addAll(page.entries);
+				children.addAll(page.commonPrefixes);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		Collections.sort(children, UNIT_ORDER);
+		return children;
+	}
+
+	private static List get(FutureTask<List> level) throws IOException {
+		try {
+			return level.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted splitting a listing");
+		} catch (ExecutionException e) {
+			Throwable t = e.getCause();
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			}
+			throw (RuntimeException) t;
+		}
+	}
+
+	private static String name(Object unit) {
+		return unit instanceof ListEntry ? ((ListEntry) unit).key
+				: (String) unit;
+	}
+
+	private static void visit(List page, ListEntryVisitor visitor)
+			throws IOException {
+		for (Iterator i = page.iterator(); i.hasNext();) {
+			visitor.visit((ListEntry) i.next());
+		}
+	}
+
+	private static Object take(BlockingQueue<Object> queue)
+			throws InterruptedIOException {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted waiting for a page");
+		}
+	}
+
+	private static IOException failed(String bucket, ListBucketResponse page)
+			throws IOException {
+		return new IOException("Could not list bucket '" + bucket + "': "
+				+ page.connection.getResponseCode() + " "
+				+ page.connection.getResponseMessage());
+	}
+
+	/**
+	 * The listing of one directory, with the pages it has listed ahead.
+	 */
+	private class Shard {
+		private final String bucket;
+
+		private final String prefix;
+
+		private final BlockingQueue<Object> pages = new ArrayBlockingQueue<Object>(
+				PAGES_AHEAD);
+
+		private Thread thread;
+
+		private boolean stopped;
+
+		private volatile Throwable failure;
+
+		Shard(String bucket, String prefix) {
+			this.bucket = bucket;
+			this.prefix = prefix;
+		}
+
+		synchronized void start(Semaphore running,
+				BlockingQueue<Object> shared) {
+			if (stopped) {
+				running.release();
+				return;
+			}
+			BlockingQueue<Object> queue = shared != null ? shared : pages;
+			thread = Thread.ofVirtual().name("list " + bucket + "/" + prefix)
+					.start(() -> {
+						try {
+							list(queue);
+						} catch (InterruptedException e) {
+							return;
+						} catch (UncheckedIOException e) {
+							failure = e.getCause();
+						} catch (Throwable t) {
+							failure = t;
+						} finally {
+							running.release();
+						}
+						try {
+							queue.put(shared != null ? this : END);
+						} catch (InterruptedException e) {
+							// the listing was abandoned
+						}
+					});
+		}
+
+		private void list(BlockingQueue<Object> queue) throws IOException,
+				InterruptedException {
+			try (BucketPages listing = new BucketPages(conn, bucket, prefix,
+					0, null)) {
+				while (listing.hasNext()) {
+					ListBucketResponse page = listing.next();
+					if (page.entries == null) {
+						throw failed(bucket, page);
+					}
+					if (!page.entries.isEmpty()) {
+						queue.put(page.entries);
+					}
+				}
+			}
+		}
+
+		void rethrow() throws IOException {
+			Throwable t = failure;
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			} else if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			}
+		}
+
+		synchronized void stop() {
+			stopped = true;
+			if (thread != null) {
+				thread.interrupt();
+			}
+		}
+	}
+}
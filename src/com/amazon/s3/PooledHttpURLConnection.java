@@ -0,0 +1,717 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A minimal HTTP/1.1 HttpURLConnection that borrows its socket from an
+ * HttpConnectionPool and gives it back once the response has been consumed, so
+ * consecutive requests to the same host skip the TCP and TLS handshakes.
+ * <p>
+ * Only the parts of HttpURLConnection used by AWSAuthConnection and the
+ * Response classes are supported: request properties, buffered or fixed
+ * length request bodies, response codes, response headers, and input/error
+ * streams. Proxies, redirects, caching and authentication are not.
+ */
+public class PooledHttpURLConnection extends HttpURLConnection {
+
+	/** Responses smaller than this are drained on close to save the socket */
+	private static final int MAX_DRAIN = 64 * 1024;
+
+	/** Error bodies larger than this are truncated */
+	private static final int MAX_ERROR_BODY = 1024 * 1024;
+
+	private final HttpConnectionPool pool;
+
+	private HttpConnectionPool.Connection conn;
+
+	/** The request properties, captured before the request is sent */
+	private Map<String, List<String>> requestHeaders;
+
+	private ByteArrayOutputStream bufferedBody;
+
+	private FixedLengthOutputStream streamingBody;
+
+	private boolean released;
+
+	private boolean requestSent;
+
+	private boolean responseRead;
+
+	private IOException failure;
+
+	private final List<String> responseKeys = new ArrayList<String>();
+
+	private final List<String> responseValues = new ArrayList<String>();
+
+	private InputStream responseBody;
+
+	private byte[] errorBody;
+
+	public PooledHttpURLConnection(URL url, HttpConnectionPool pool) {
+		super(url);
+		this.pool = pool;
+	}
+
+	public void connect() throws IOException {
+		if (conn != null) {
+			return;
+		}
+		captureRequestHeaders();
+		boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		conn = pool.lease(secure, url.getHost(), port, getConnectTimeout(),
+				getReadTimeout());
+		released = false;
+		connected = true;
+	}
+
+	public void disconnect() {
+		releaseConnection(false);
+	}
+
+	public boolean usingProxy() {
+		return false;
+	}
+
+	public OutputStream getOutputStream() throws IOException {
+		if (!doOutput) {
+			throw new ProtocolException(
+					"cannot write to a URLConnection if doOutput=false - call setDoOutput(true)");
+		}
+		if (requestSent && streamingBody == null) {
+			throw new ProtocolException(
+					"Cannot write output after reading input.");
+		}
+		if (streamingBody != null) {
+			return streamingBody;
+		}
+		if (bufferedBody != null) {
+			return bufferedBody;
+		}
+
+		long length = fixedContentLengthLong != -1 ? fixedContentLengthLong
+				: fixedContentLength;
+		if (length == -1) {
+			bufferedBody = new ByteArrayOutputStream();
+			return bufferedBody;
+		}
+
+		// fixed length streaming mode, write the head now and let the caller
+		// stream the body straight to the socket
+		connect();
+		writeRequestHead(length);
+		requestSent = true;
+		streamingBody = new FixedLengthOutputStream(conn.out, length);
+		return streamingBody;
+	}
+
+	public InputStream getInputStream() throws IOException {
+		readResponse();
+		if (responseCode >= 400) {
+			if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+				throw new FileNotFoundException(url.toString());
+			}
+			throw new IOException("Server returned HTTP response code: "
+					+ responseCode + " for URL: " + url);
+		}
+		return responseBody;
+	}
+
+	public InputStream getErrorStream() {
+		if (!responseRead || responseCode < 400 || errorBody == null) {
+			return null;
+		}
+		return new ByteArrayInputStream(errorBody);
+	}
+
+	public int getResponseCode() throws IOException {
+		readResponse();
+		return responseCode;
+	}
+
+	public String getResponseMessage() throws IOException {
+		readResponse();
+		return responseMessage;
+	}
+
+	public String getHeaderField(int n) {
+		if (!ensureResponse() || n < 0 || n >= responseValues.size()) {
+			return null;
+		}
+		return responseValues.get(n);
+	}
+
+	public String getHeaderFieldKey(int n) {
+		if (!ensureResponse() || n < 0 || n >= responseKeys.size()) {
+			return null;
+		}
+		return responseKeys.get(n);
+	}
+
+	public String getHeaderField(String name) {
+		if (!ensureResponse()) {
+			return null;
+		}
+		// the last value wins, as with the JDK implementation
+		for (int i = responseKeys.size() - 1; i > 0; i--) {
+			if (name.equalsIgnoreCase(responseKeys.get(i))) {
+				return responseValues.get(i);
+			}
+		}
+		return null;
+	}
+
+	public Map<String, List<String>> getHeaderFields() {
+		Map<String, List<String>> fields = new TreeMap<String, List<String>>(
+				String.CASE_INSENSITIVE_ORDER);
+		if (!ensureResponse()) {
+			return fields;
+		}
+		for (int i = 0; i < responseKeys.size(); i++) {
+			String key = responseKeys.get(i);
+			if (key == null) {
+				continue;
+			}
+			List<String> values = fields.get(key);
+			if (values == null) {
+				values = new ArrayList<String>();
+				fields.put(key, values);
+			}
+			values.add(responseValues.get(i));
+		}
+		for (Iterator<Map.Entry<String, List<String>>> i = fields.entrySet()
+				.iterator(); i.hasNext();) {
+			Map.Entry<String, List<String>> entry = i.next();
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		// the status line is exposed under the null key, which a TreeMap
+		// cannot hold
+		Map<String, List<String>> all = new LinkedHashMap<String, List<String>>();
+		all.put(null, Collections.singletonList(responseValues.get(0)));
+		all.putAll(fields);
+		return Collections.unmodifiableMap(all);
+	}
+
+	/**
+	 * Returns true if the socket used for this request had already carried a
+	 * previous request.
+	 */
+	public boolean isReused() {
+		return conn != null && conn.reused;
+	}
+
+	/**
+	 * Gives the socket back to the pool, at most once per request. A hedged
+	 * request may be disconnected by another thread while it is being read.
+	 */
+	private synchronized void releaseConnection(boolean reusable) {
+		if (conn != null && !released) {
+			released = true;
+			pool.release(conn, reusable);
+		}
+	}
+
+	private boolean ensureResponse() {
+		try {
+			readResponse();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private void captureRequestHeaders() {
+		if (requestHeaders == null) {
+			requestHeaders = getRequestProperties();
+		}
+	}
+
+	/**
+	 * Sends the request if that hasn't happened yet and reads the response
+	 * status line and headers.
+	 */
+	private void readResponse() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (responseRead) {
+			return;
+		}
+		try {
+			if (!requestSent) {
+				sendBufferedRequest();
+			} else {
+				streamingBody.finish();
+			}
+			readResponseHead();
+		} catch (IOException e) {
+			failure = e;
+			releaseConnection(false);
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends a request whose body (if any) has been buffered in memory. Such a
+	 * request can be replayed, so if a reused keep-alive connection turns out
+	 * to have been closed by the server it is retried once on a new one.
+	 */
+	private void sendBufferedRequest() throws IOException {
+		byte[] body = bufferedBody == null ? null : bufferedBody
+				.toByteArray();
+		long length = body != null ? body.length
+				: ("PUT".equals(method) || "POST".equals(method)) ? 0 : -1;
+
+		connect();
+		try {
+			writeRequestHead(length);
+			if (body != null) {
+				conn.out.write(body);
+			}
+			conn.out.flush();
+			requestSent = true;
+			conn.in.mark(1);
+			if (conn.in.read() == -1) {
+				throw new EOFException("Connection closed by server");
+			}
+			conn.in.reset();
+		} catch (IOException e) {
+			if (!conn.reused || e instanceof SocketTimeoutException) {
+				throw e;
+			}
+			releaseConnection(false);
+			conn = null;
+			connect();
+			writeRequestHead(length);
+			if (body != null) {
+				conn.out.write(body);
+			}
+			conn.out.flush();
+			requestSent = true;
+		}
+	}
+
+	private void writeRequestHead(long length) throws IOException {
+		StringBuilder head = new StringBuilder(256);
+		String file = url.getFile();
+		head.append(method).append(' ').append(file.length() == 0 ? "/" : file)
+				.append(" HTTP/1.1\r\n");
+
+		head.append("Host: ").append(url.getHost());
+		if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+			head.append(':').append(url.getPort());
+		}
+		head.append("\r\n");
+
+		boolean hasUserAgent = false;
+		for (Map.Entry<String, List<String>> entry : requestHeaders.entrySet()) {
+			String key = entry.getKey();
+			if (key == null || key.equalsIgnoreCase("Content-Length")
+					|| key.equalsIgnoreCase("Host")) {
+				continue;
+			}
+			if (key.equalsIgnoreCase("User-Agent")) {
+				hasUserAgent = true;
+			}
+			for (String value : entry.getValue()) {
+				head.append(key).append(": ").append(value).append("\r\n");
+			}
+		}
+		if (!hasUserAgent) {
+			head.append("User-Agent: jSh3ll\r\n");
+		}
+		if (length >= 0) {
+			head.append("Content-Length: ").append(length).append("\r\n");
+		}
+		head.append("\r\n");
+
+		conn.out.write(head.toString().getBytes("ISO-8859-1"));
+	}
+
+	private void readResponseHead() throws IOException {
+		String statusLine;
+		do {
+			responseKeys.clear();
+			responseValues.clear();
+			statusLine = readLine(conn.in);
+			if (statusLine == null) {
+				throw new EOFException("Unexpected end of response from "
+						+ url.getHost());
+			}
+			if (!statusLine.startsWith("HTTP/") || statusLine.length() < 12) {
+				throw new IOException("Invalid HTTP status line: "
+						+ statusLine);
+			}
+			responseCode = Integer.parseInt(statusLine.substring(9, 12));
+			responseMessage = statusLine.length() > 13 ? statusLine
+					.substring(13) : "";
+			responseKeys.add(null);
+			responseValues.add(statusLine);
+
+			String line;
+			while ((line = readLine(conn.in)) != null && line.length() > 0) {
+				int colon = line.indexOf(':');
+				if (colon <= 0) {
+					continue;
+				}
+				responseKeys.add(line.substring(0, colon).trim());
+				responseValues.add(line.substring(colon + 1).trim());
+			}
+			// skip interim responses such as 100 Continue
+		} while (responseCode >= 100 && responseCode < 200);
+
+		boolean keepAlive = !statusLine.startsWith("HTTP/1.0");
+		String connection = getHeaderFieldInternal("Connection");
+		if (connection != null) {
+			if (connection.equalsIgnoreCase("close")) {
+				keepAlive = false;
+			} else if (connection.equalsIgnoreCase("keep-alive")) {
+				keepAlive = true;
+			}
+		}
+
+		String transferEncoding = getHeaderFieldInternal("Transfer-Encoding");
+		String contentLength = getHeaderFieldInternal("Content-Length");
+		if ("HEAD".equals(method) || responseCode == HTTP_NO_CONTENT
+				|| responseCode == HTTP_NOT_MODIFIED) {
+			responseBody = new BodyInputStream(new FixedLengthInputStream(
+					conn.in, 0), keepAlive);
+		} else if (transferEncoding != null
+				&& transferEncoding.toLowerCase().indexOf("chunked") != -1) {
+			responseBody = new BodyInputStream(
+					new ChunkedInputStream(conn.in), keepAlive);
+		} else if (contentLength != null) {
+			responseBody = new BodyInputStream(new FixedLengthInputStream(
+					conn.in, Long.parseLong(contentLength)), keepAlive);
+		} else {
+			// delimited by the end of the connection
+			responseBody = new BodyInputStream(conn.in, false);
+		}
+		responseRead = true;
+
+		if (responseCode >= 400) {
+			// error documents are small; read them now so the connection can
+			// go back to the pool even if nobody looks at them
+			ByteArrayOutputStream error = new ByteArrayOutputStream();
+			byte[] buf = new byte[2048];
+			int count;
+			while (error.size() < MAX_ERROR_BODY
+					&& (count = responseBody.read(buf)) != -1) {
+				error.write(buf, 0, count);
+			}
+			responseBody.close();
+			errorBody = error.toByteArray();
+		}
+	}
+
+	private String getHeaderFieldInternal(String name) {
+		for (int i = responseKeys.size() - 1; i > 0; i--) {
+			if (name.equalsIgnoreCase(responseKeys.get(i))) {
+				return responseValues.get(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a CRLF (or LF) terminated ISO-8859-1 line, without the line
+	 * terminator. Returns null at the end of the stream.
+	 */
+	static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == '\r') {
+					line.setLength(length - 1);
+				}
+				return line.toString();
+			}
+			line.append((char) c);
+		}
+		return line.length() == 0 ? null : line.toString();
+	}
+
+	/**
+	 * Wraps the framed response body and returns the connection to the pool
+	 * once it has been read to the end (or closed early).
+	 */
+	private class BodyInputStream extends InputStream {
+		private final InputStream in;
+
+		private final boolean keepAlive;
+
+		private boolean done;
+
+		BodyInputStream(InputStream in, boolean keepAlive) throws IOException {
+			this.in = in;
+			this.keepAlive = keepAlive;
+			if (in instanceof FixedLengthInputStream
+					&& ((FixedLengthInputStream) in).remaining == 0) {
+				finish(true);
+			}
+		}
+
+		public int read() throws IOException {
+			if (done) {
+				return -1;
+			}
+			int b;
+			try {
+				b = in.read();
+			} catch (IOException e) {
+				finish(false);
+				throw e;
+			}
+			if (b == -1) {
+				finish(keepAlive);
+			}
+			return b;
+		}
+
+		public int read(byte[] buf, int off, int len) throws IOException {
+			if (done) {
+				return -1;
+			}
+			int count;
+			try {
+				count = in.read(buf, off, len);
+			} catch (IOException e) {
+				finish(false);
+				throw e;
+			}
+			if (count == -1) {
+				finish(keepAlive);
+			}
+			return count;
+		}
+
+		public int available() throws IOException {
+			return done ? 0 : in.available();
+		}
+
+		public void close() throws IOException {
+			if (done) {
+				return;
+			}
+			if (!keepAlive) {
+				finish(false);
+				return;
+			}
+			// drain small leftovers so the connection can be reused
+			try {
+				byte[] buf = new byte[2048];
+				long drained = 0;
+				int count = 0;
+				while (drained < MAX_DRAIN && (count = in.read(buf)) != -1) {
+					drained += count;
+				}
+				finish(count == -1);
+			} catch (IOException e) {
+				finish(false);
+			}
+		}
+
+		private void finish(boolean reusable) {
+			if (!done) {
+				done = true;
+				releaseConnection(reusable);
+			}
+		}
+	}
+
+	/**
+	 * A body of known length.
+	 */
+	static class FixedLengthInputStream extends InputStream {
+		private final InputStream in;
+
+		long remaining;
+
+		FixedLengthInputStream(InputStream in, long length) {
+			this.in = in;
+			this.remaining = length;
+		}
+
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("Premature end of response body");
+			}
+			remaining--;
+			return b;
+		}
+
+		public int read(byte[] buf, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int count = in.read(buf, off, (int) Math.min(len, remaining));
+			if (count == -1) {
+				throw new EOFException("Premature end of response body");
+			}
+			remaining -= count;
+			return count;
+		}
+
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), remaining);
+		}
+	}
+
+	/**
+	 * A body sent with Transfer-Encoding: chunked.
+	 */
+	static class ChunkedInputStream extends InputStream {
+		private final InputStream in;
+
+		private long chunkRemaining;
+
+		private boolean eof;
+
+		ChunkedInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int count = read(b, 0, 1);
+			return count == -1 ? -1 : b[0] & 0xff;
+		}
+
+		public int read(byte[] buf, int off, int len) throws IOException {
+			if (eof) {
+				return -1;
+			}
+			if (chunkRemaining == 0) {
+				nextChunk();
+				if (eof) {
+					return -1;
+				}
+			}
+			int count = in.read(buf, off, (int) Math.min(len, chunkRemaining));
+			if (count == -1) {
+				throw new EOFException("Premature end of chunked response body");
+			}
+			chunkRemaining -= count;
+			if (chunkRemaining == 0) {
+				// the CRLF that ends every chunk
+				readLine(in);
+			}
+			return count;
+		}
+
+		private void nextChunk() throws IOException {
+			String line = readLine(in);
+			if (line == null) {
+				throw new EOFException("Premature end of chunked response body");
+			}
+			int semi = line.indexOf(';');
+			if (semi != -1) {
+				line = line.substring(0, semi);
+			}
+			chunkRemaining = Long.parseLong(line.trim(), 16);
+			if (chunkRemaining == 0) {
+				// skip the trailers
+				String trailer;
+				while ((trailer = readLine(in)) != null && trailer.length() > 0) {
+				}
+				eof = true;
+			}
+		}
+	}
+
+	/**
+	 * Streams a request body of a declared length straight to the socket.
+	 */
+	private static class FixedLengthOutputStream extends OutputStream {
+		private final OutputStream out;
+
+		private final long length;
+
+		private long written;
+
+		FixedLengthOutputStream(OutputStream out, long length) {
+			this.out = out;
+			this.length = length;
+		}
+
+		public void write(int b) throws IOException {
+			check(1);
+			out.write(b);
+			written++;
+		}
+
+		public void write(byte[] buf, int off, int len) throws IOException {
+			check(len);
+			out.write(buf, off, len);
+			written += len;
+		}
+
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		public void close() throws IOException {
+			finish();
+		}
+
+		void finish() throws IOException {
+			if (written != length) {
+				throw new IOException("insufficient data written: expected "
+						+ length + " bytes, wrote " + written);
+			}
+			out.flush();
+		}
+
+		private void check(int len) throws IOException {
+			if (written + len > length) {
+				throw new IOException("too many bytes written: expected "
+						+ length + " bytes");
+			}
+		}
+	}
+}
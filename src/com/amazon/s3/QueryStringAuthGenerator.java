@@ -25,7 +25,7 @@ import java.util.TreeMap;
 public class QueryStringAuthGenerator {
 
     private String awsAccessKeyId;
-    private String awsSecretAccessKey;
+    private RequestSigner signer;
     private boolean isSecure;
     private String server;
     private int port;
@@ -57,7 +57,7 @@ public class QueryStringAuthGenerator {
                              boolean isSecure, String server, int port)
     {
         this.awsAccessKeyId = awsAccessKeyId;
-        this.awsSecretAccessKey = awsSecretAccessKey;
+        this.signer = new RequestSigner(awsAccessKeyId, awsSecretAccessKey);
         this.isSecure = isSecure;
         this.server = server;
         this.port = port;
@@ -161,8 +161,7 @@ public class QueryStringAuthGenerator {
         // convert to seconds
         expires /= 1000;
 
-        String canonicalString = Utils.makeCanonicalString(method, path, headers, ""+expires);
-        String encodedCanonical = Utils.encode(this.awsSecretAccessKey, canonicalString, true);
+        String encodedCanonical = Utils.urlencode(this.signer.sign(method, path, headers, ""+expires));
 
         StringBuffer buffer = new StringBuffer();
         if (this.isSecure) {
@@ -0,0 +1,282 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate of requests an AWSAuthConnection sends, separately for
+ * every bucket and kind of operation (GET, PUT, DELETE and LIST), so bulk
+ * operations stay below the rate at which S3 starts to answer SlowDown.
+ * <p>
+ * Each bucket and operation has a token bucket that fills at the configured
+ * rate and holds at most a tenth of a second worth of requests. Requests over
+ * the rate reserve a future token and wait for it, which spaces them evenly
+ * in the order they arrived instead of letting them through in bursts.
+ * <p>
+ * A rate can be set for a single bucket or for all buckets; a bucket without
+ * a rate of its own gets its own bucket at the rate set for all buckets.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class RateLimiter {
+
+	/**
+	 * The kinds of operations that are limited separately.
+	 */
+	public enum Operation {
+		GET, PUT, DELETE, LIST
+	};
+
+	/** Seconds worth of requests a bucket may send in a burst */
+	private static final double BURST_SECONDS = 0.1;
+
+	/** Rates for all buckets, by operation */
+	private final Map<Operation, Double> defaultRates = new HashMap<Operation, Double>();
+
+	/** Rates for single buckets, keyed by bucket + " " + operation */
+	private final Map<String, Double> bucketRates = new HashMap<String, Double>();
+
+	private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+	private final AtomicLong delayedCount = new AtomicLong();
+
+	private final AtomicLong delayNanos = new AtomicLong();
+
+	/**
+	 * Sets the rate of an operation.
+	 * 
+	 * @param bucket
+	 *            The bucket to set the rate for, or null for all buckets
+	 *            without a rate of their own.
+	 * @param operation
+	 *            The operation to limit.
+	 * @param requestsPerSecond
+	 *            The rate, or 0 to remove the limit.
+	 */
+	public synchronized void setRate(String bucket, Operation operation,
+			double requestsPerSecond) {
+		if (requestsPerSecond < 0) {
+			throw new IllegalArgumentException("rate must be >= 0");
+		}
+		Double rate = requestsPerSecond == 0 ? null : Double
+				.valueOf(requestsPerSecond);
+		if (bucket == null) {
+			if (rate == null) {
+				defaultRates.remove(operation);
+			} else {
+				defaultRates.put(operation, rate);
+			}
+		} else {
+			if (rate == null) {
+				bucketRates.remove(bucket + " " + operation);
+			} else {
+				bucketRates.put(bucket + " " + operation, rate);
+			}
+		}
+		// token buckets pick up the new rates as they are recreated
+		buckets.clear();
+	}
+
+	/**
+	 * Returns the rate of an operation, 0 if it isn't limited.
+	 * 
+	 * @param bucket
+	 *            The bucket to get the rate for, or null for the rate of all
+	 *            buckets without a rate of their own.
+	 * @param operation
+	 *            The operation.
+	 */
+	public synchronized double getRate(String bucket, Operation operation) {
+		Double rate = null;
+		if (bucket != null) {
+			rate = bucketRates.get(bucket + " " + operation);
+		}
+		if (rate == null) {
+			rate = defaultRates.get(operation);
+		}
+		return rate == null ? 0 : rate.doubleValue();
+	}
+
+	/**
+	 * Returns the rates set for single buckets, keyed by bucket and operation
+	 * separated by a space.
+	 */
+	public synchronized Map<String, Double> getBucketRates() {
+		return new HashMap<String, Double>(bucketRates);
+	}
+
+	/**
+	 * Waits until a request may be sent.
+	 * 
+	 * @param method
+	 *            The HTTP method of the request.
+	 * @param resource
+	 *            The resource of the request (bucketName + "/" + key, with an
+	 *            optional query).
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted while waiting.
+	 */
+	public void acquire(String method, String resource)
+			throws InterruptedIOException {
+		long wait = reserve(method, resource);
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted waiting for the rate limit");
+			}
+		}
+	}
+
+	/**
+	 * Reserves the right to send a request without waiting for it, for
+	 * requests that are sent asynchronously.
+	 * 
+	 * @param method
+	 *            The HTTP method of the request.
+	 * @param resource
+	 *            The resource of the request (bucketName + "/" + key, with an
+	 *            optional query).
+	 * @return The number of nanoseconds to wait before sending the request.
+	 */
+	long reserve(String method, String resource) {
+		String bucket = bucketOf(resource);
+		if (bucket == null) {
+			// listing all buckets isn't limited
+			return 0;
+		}
+		Operation operation = operationOf(method, resource);
+		String key = bucket + " " + operation;
+		TokenBucket tokens = buckets.get(key);
+		if (tokens == null) {
+			double rate = getRate(bucket, operation);
+			if (rate == 0) {
+				return 0;
+			}
+			TokenBucket created = new TokenBucket(rate);
+			tokens = buckets.putIfAbsent(key, created);
+			if (tokens == null) {
+				tokens = created;
+			}
+		}
+
+		long wait = tokens.reserve();
+		if (wait > 0) {
+			delayedCount.incrementAndGet();
+			delayNanos.addAndGet(wait);
+		}
+		return wait;
+	}
+
+	/**
+	 * Returns the number of requests that had to wait.
+	 */
+	public long getDelayedCount() {
+		return delayedCount.get();
+	}
+
+	/**
+	 * Returns the total number of milliseconds requests have waited.
+	 */
+	public long getDelayMillis() {
+		return delayNanos.get() / 1000000;
+	}
+
+	/**
+	 * Returns the bucket a resource is in, or null for the service itself.
+	 */
+	static String bucketOf(String resource) {
+		int end = resource.length();
+		int slash = resource.indexOf('/');
+		if (slash != -1) {
+			end = slash;
+		}
+		int query = resource.indexOf('?');
+		if (query != -1 && query < end) {
+			end = query;
+		}
+		return end == 0 ? null : resource.substring(0, end);
+	}
+
+	/**
+	 * Returns the kind of operation a request is. A GET of a bucket itself is
+	 * a LIST, unless it is for a subresource like ?acl.
+	 */
+	static Operation operationOf(String method, String resource) {
+		if (method.equals("DELETE") || resource.endsWith("?delete")) {
+			// a multi-object delete is a POST, but it's still a delete
+			return Operation.DELETE;
+		}
+		if (method.equals("PUT") || method.equals("POST")) {
+			return Operation.PUT;
+		}
+		int slash = resource.indexOf('/');
+		int query = resource.indexOf('?');
+		boolean isBucket = slash == -1 || (query != -1 && query < slash);
+		if (isBucket && (query == -1 || resource.indexOf('=', query) != -1)) {
+			return Operation.LIST;
+		}
+		return Operation.GET;
+	}
+
+	/**
+	 * A token bucket that hands out reservations, so waiting requests are
+	 * served in order at an even pace.
+	 */
+	private static class TokenBucket {
+		private final double rate;
+
+		private final double capacity;
+
+		private double tokens;
+
+		private long lastRefill;
+
+		TokenBucket(double rate) {
+			this.rate = rate;
+			this.capacity = Math.max(1, rate * BURST_SECONDS);
+			this.tokens = capacity;
+			this.lastRefill = System.nanoTime();
+		}
+
+		/**
+		 * Takes a token, returns the number of nanoseconds to wait before it
+		 * is available.
+		 */
+		synchronized long reserve() {
+			long now = System.nanoTime();
+			tokens = Math.min(capacity, tokens + (now - lastRefill) * rate
+					/ 1e9);
+			lastRefill = now;
+			tokens -= 1;
+			return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+		}
+	}
+}
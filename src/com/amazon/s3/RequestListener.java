@@ -0,0 +1,47 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+/**
+ * Is told how every request an AWSAuthConnection sends turns out, for
+ * example to adjust how many requests are sent at once. Each attempt of a
+ * retried request is reported separately.
+ * <p>
+ * Listeners are called on the thread that sent the request, often many
+ * threads at once, and should return quickly.
+ */
+public interface RequestListener {
+
+	/**
+	 * Called when the response headers of a request have arrived, or sending
+	 * it failed.
+	 * 
+	 * @param status
+	 *            The HTTP status code of the response, or 0 if no response
+	 *            arrived (the connection failed or timed out).
+	 * @param nanos
+	 *            The time from opening the request to its response headers, in
+	 *            nanoseconds.
+	 */
+	void requestCompleted(int status, long nanos);
+}
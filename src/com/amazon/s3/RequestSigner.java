@@ -0,0 +1,330 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs requests with one credential. It makes the same signatures as
+ * Utils.makeCanonicalString() and Utils.encode(), without their cost on every
+ * request: the key is set up in a Mac once and each signature is made with a
+ * clone of it, and the canonical string is built in a reused buffer with the
+ * x-amz- headers sorted in place rather than through a TreeMap.
+ * <p>
+ * A RequestSigner can be shared by any number of threads. The Mac clones
+ * and buffers are pooled rather than kept per thread, since requests are
+ * usually sent from short-lived virtual threads.
+ */
+public final class RequestSigner {
+
+	/** HMAC/SHA1 Algorithm per RFC 2104 */
+	private static final String HMAC_SHA1_ALGORITHM = "HmacSHA1";
+
+	/** Most signing states kept for reuse */
+	private static final int POOL_SIZE = 32;
+
+	/** Largest canonical string buffer kept for reuse */
+	private static final int MAX_KEPT_BUFFER = 8192;
+
+	/** Line breaks, which are dropped from signed header values */
+	private static final Pattern LINE_BREAKS = Pattern.compile("\n");
+
+	private final String awsAccessKeyId;
+
+	private final SecretKeySpec signingKey;
+
+	private final Mac prototype;
+
+	private final ConcurrentLinkedQueue<State> pool = new ConcurrentLinkedQueue<State>();
+
+	/**
+	 * What one signature is made with.
+	 */
+	private static final class State {
+		final Mac mac;
+
+		final StringBuilder buf = new StringBuilder(256);
+
+		byte[] bytes = new byte[256];
+
+		String[] amzNames = new String[8];
+
+		String[] amzValues = new String[8];
+
+		State(Mac mac) {
+			this.mac = mac;
+		}
+	}
+
+	/**
+	 * @param awsAccessKeyId
+	 *            The your user key into AWS
+	 * @param awsSecretAccessKey
+	 *            The secret string used to generate signatures for
+	 *            authentication.
+	 */
+	public RequestSigner(String awsAccessKeyId, String awsSecretAccessKey) {
+		this.awsAccessKeyId = awsAccessKeyId;
+		this.signingKey = new SecretKeySpec(awsSecretAccessKey.getBytes(),
+				HMAC_SHA1_ALGORITHM);
+		this.prototype = newMac();
+	}
+
+	public String getAwsAccessKeyId() {
+		return awsAccessKeyId;
+	}
+
+	/**
+	 * Returns the Authorization header for a request.
+	 * 
+	 * @param method
+	 *            The HTTP method to use (GET, PUT, DELETE)
+	 * @param resource
+	 *            The resource name (bucketName + "/" + key).
+	 * @param headers
+	 *            A Map of String to List of Strings with the request headers.
+	 */
+	public String authorization(String method, String resource, Map headers) {
+		return "AWS " + awsAccessKeyId + ":"
+				+ sign(method, resource, headers, null);
+	}
+
+	/**
+	 * Returns the Base64 signature of a request.
+	 * 
+	 * @param expires
+	 *            Signed instead of the Date header when not null, for query
+	 *            string authentication.
+	 */
+	public String sign(String method, String resource, Map headers,
+			String expires) {
+		State state = pool.poll();
+		if (state == null) {
+			state = new State(cloneMac());
+		}
+		try {
+			canonicalize(state, method, resource, headers, expires);
+			return Base64.getEncoder().encodeToString(digest(state));
+		} finally {
+			if (state.buf.capacity() <= MAX_KEPT_BUFFER
+					&& pool.size() < POOL_SIZE) {
+				pool.offer(state);
+			}
+		}
+	}
+
+	/**
+	 * Returns the string a request is signed by.
+	 */
+	String canonicalString(String method, String resource, Map headers,
+			String expires) {
+		State state = new State(null);
+		canonicalize(state, method, resource, headers, expires);
+		return state.buf.toString();
+	}
+
+	private Mac newMac() {
+		Mac mac = null;
+		try {
+			mac = Mac.getInstance(HMAC_SHA1_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// should not happen
+			throw new RuntimeException("Could not find sha1 algorithm", e);
+		}
+		try {
+			mac.init(signingKey);
+		} catch (InvalidKeyException e) {
+			// also should not happen
+			throw new RuntimeException("Could not initialize the MAC algorithm", e);
+		}
+		return mac;
+	}
+
+	private Mac cloneMac() {
+		try {
+			return (Mac) prototype.clone();
+		} catch (CloneNotSupportedException e) {
+			// the provider can't copy a keyed Mac
+			return newMac();
+		}
+	}
+
+	/**
+	 * Builds the canonical string in the state's buffer, the way
+	 * Utils.makeCanonicalString() does.
+	 */
+	private void canonicalize(State state, String method, String resource,
+			Map headers, String expires) {
+		String contentMd5 = "";
+		String contentType = "";
+		String date = null;
+		boolean amzDate = false;
+		int amzCount = 0;
+		if (headers != null) {
+			for (Iterator i = headers.entrySet().iterator(); i.hasNext();) {
+				Map.Entry header = (Map.Entry) i.next();
+				String key = (String) header.getKey();
+				if (key == null) {
+					continue;
+				}
+				String lk = key.toLowerCase();
+				if (lk.equals("content-type")) {
+					contentType = concatenate((List) header.getValue());
+				} else if (lk.equals("content-md5")) {
+					contentMd5 = concatenate((List) header.getValue());
+				} else if (lk.equals("date")) {
+					date = concatenate((List) header.getValue());
+				} else if (lk.startsWith(Utils.AMAZON_HEADER_PREFIX)) {
+					if (amzCount == state.amzNames.length) {
+						state.amzNames = grow(state.amzNames);
+						state.amzValues = grow(state.amzValues);
+					}
+					state.amzNames[amzCount] = lk;
+					state.amzValues[amzCount] = concatenate((List) header
+							.getValue());
+					amzCount++;
+					amzDate |= lk.equals(Utils.ALTERNATIVE_DATE_HEADER);
+				}
+			}
+		}
+		if (amzDate) {
+			date = "";
+		}
+		if (expires != null) {
+			date = expires;
+		}
+
+		// the x-amz- headers are few, an insertion sort keeps the last of
+		// any that differ only by case after the first, like a map would
+		String[] names = state.amzNames;
+		String[] values = state.amzValues;
+		for (int i = 1; i < amzCount; i++) {
+			String name = names[i];
+			String value = values[i];
+			int j = i - 1;
+			while (j >= 0 && names[j].compareTo(name) > 0) {
+				names[j + 1] = names[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			names[j + 1] = name;
+			values[j + 1] = value;
+		}
+
+		StringBuilder buf = state.buf;
+		buf.setLength(0);
+		buf.append(method).append('\n');
+		buf.append(contentMd5).append('\n');
+		buf.append(contentType).append('\n');
+		if (date != null) {
+			buf.append(date).append('\n');
+		}
+		for (int i = 0; i < amzCount; i++) {
+			if (i + 1 < amzCount && names[i + 1].equals(names[i])) {
+				continue;
+			}
+			buf.append(names[i]).append(':').append(values[i]).append('\n');
+		}
+		for (int i = 0; i < amzCount; i++) {
+			names[i] = null;
+			values[i] = null;
+		}
+
+		// don't include the query parameters, unless they name a
+		// sub-resource
+		int queryIndex = resource.indexOf('?');
+		buf.append('/');
+		if (queryIndex == -1) {
+			buf.append(resource);
+		} else {
+			buf.append(resource, 0, queryIndex);
+			buf.append(Utils.canonicalSubResources(resource
+					.substring(queryIndex + 1)));
+		}
+	}
+
+	/**
+	 * Computes the HMAC of the canonical string in the state's buffer.
+	 */
+	private static byte[] digest(State state) {
+		StringBuilder buf = state.buf;
+		int length = buf.length();
+		if (state.bytes.length < length) {
+			state.bytes = new byte[Math.max(length, state.bytes.length * 2)];
+		}
+		byte[] bytes = state.bytes;
+		for (int i = 0; i < length; i++) {
+			char c = buf.charAt(i);
+			if (c >= 0x80) {
+				// not ASCII, let the charset do it
+				return state.mac.doFinal(buf.toString().getBytes(
+						StandardCharsets.UTF_8));
+			}
+			bytes[i] = (byte) c;
+		}
+		state.mac.update(bytes, 0, length);
+		return state.mac.doFinal();
+	}
+
+	/**
+	 * Joins header values with commas, dropping line breaks and the
+	 * whitespace around each value.
+	 */
+	private static String concatenate(List values) {
+		if (values.size() == 1) {
+			return clean((String) values.get(0));
+		}
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0, size = values.size(); i < size; ++i) {
+			if (i != 0) {
+				buf.append(',');
+			}
+			buf.append(clean((String) values.get(i)));
+		}
+		return buf.toString();
+	}
+
+	private static String clean(String value) {
+		if (value.indexOf('\n') != -1) {
+			value = LINE_BREAKS.matcher(value).replaceAll("");
+		}
+		return value.trim();
+	}
+
+	private static String[] grow(String[] array) {
+		String[] grown = new String[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
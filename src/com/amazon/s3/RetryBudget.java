@@ -0,0 +1,122 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+/**
+ * Limits how many requests may be retried, so that retries can't multiply
+ * the load on a service that is already failing. The budget is a bucket of
+ * tokens: every retry takes one, every request that succeeds puts back a
+ * fraction of one. Once the bucket is empty, failures are returned to the
+ * caller as they are until enough requests have succeeded again.
+ * <p>
+ * With the defaults, a burst of 100 retries is allowed, and after that about
+ * one retry for every ten successful requests.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class RetryBudget {
+
+	/** Default number of retries that may be made in a burst */
+	public static final double DEFAULT_CAPACITY = 100;
+
+	/** Default number of tokens a successful request puts back */
+	public static final double DEFAULT_REFILL = 0.1;
+
+	/** The budget shared by all RetryPolicies unless told otherwise */
+	private static final RetryBudget defaultBudget = new RetryBudget();
+
+	private final double capacity;
+
+	private final double refill;
+
+	private double tokens;
+
+	private long exhaustedCount;
+
+	public RetryBudget() {
+		this(DEFAULT_CAPACITY, DEFAULT_REFILL);
+	}
+
+	/**
+	 * Create a new retry budget, initially full.
+	 * 
+	 * @param capacity
+	 *            The number of retries that may be made in a burst.
+	 * @param refill
+	 *            The number of retries every successful request earns back.
+	 */
+	public RetryBudget(double capacity, double refill) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be >= 1");
+		}
+		if (refill < 0) {
+			throw new IllegalArgumentException("refill must be >= 0");
+		}
+		this.capacity = capacity;
+		this.refill = refill;
+		this.tokens = capacity;
+	}
+
+	/**
+	 * Returns the budget shared by default between all RetryPolicies.
+	 */
+	public static RetryBudget getDefault() {
+		return defaultBudget;
+	}
+
+	/**
+	 * Takes the token for one retry.
+	 * 
+	 * @return False if the budget is exhausted and the request must not be
+	 *         retried.
+	 */
+	public synchronized boolean tryAcquire() {
+		if (tokens < 1) {
+			exhaustedCount++;
+			return false;
+		}
+		tokens -= 1;
+		return true;
+	}
+
+	/**
+	 * Records a successful request.
+	 */
+	public synchronized void recordSuccess() {
+		tokens = Math.min(capacity, tokens + refill);
+	}
+
+	/**
+	 * Returns the number of retries that could be made right now.
+	 */
+	public synchronized double getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * Returns the number of retries refused because the budget was exhausted.
+	 */
+	public synchronized long getExhaustedCount() {
+		return exhaustedCount;
+	}
+}
@@ -0,0 +1,317 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLException;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Decides whether, and after how long, a failed S3 request is retried.
+ * <p>
+ * A response is retried if S3 reports a transient condition: any 5xx status
+ * other than 501, or one of the error codes in the error document of a 4xx
+ * response that S3 documents as transient (RequestTimeout, OperationAborted,
+ * SlowDown and friends). An IOException is retried unless it is clearly
+ * permanent, like an unknown host or a failed TLS handshake.
+ * <p>
+ * Retries are spaced with "decorrelated jitter": each delay is picked at
+ * random between the base delay and three times the previous delay, capped
+ * at the maximum delay. Every retry also has to be granted by a RetryBudget,
+ * so that retries can't amplify an outage.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class RetryPolicy {
+
+	/** Default number of times a request is sent, including the first */
+	public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+	/** Default smallest delay between attempts, in milliseconds */
+	public static final long DEFAULT_BASE_DELAY = 100;
+
+	/** Default largest delay between attempts, in milliseconds */
+	public static final long DEFAULT_MAX_DELAY = 5000;
+
+	/** S3 error codes for conditions that go away by themselves */
+	private static final Set<String> RETRYABLE_ERROR_CODES = new HashSet<String>();
+	static {
+		RETRYABLE_ERROR_CODES.add("InternalError");
+		RETRYABLE_ERROR_CODES.add("OperationAborted");
+		RETRYABLE_ERROR_CODES.add("RequestTimeout");
+		RETRYABLE_ERROR_CODES.add("ServiceUnavailable");
+		RETRYABLE_ERROR_CODES.add("SlowDown");
+		RETRYABLE_ERROR_CODES.add("Throttling");
+		RETRYABLE_ERROR_CODES.add("ThrottlingException");
+	}
+
+	private final int maxAttempts;
+
+	private final long baseDelay;
+
+	private final long maxDelay;
+
+	private final RetryBudget budget;
+
+	private final AtomicLong retryCount = new AtomicLong();
+
+	public RetryPolicy() {
+		this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY,
+				RetryBudget.getDefault());
+	}
+
+	/**
+	 * Create a new retry policy.
+	 * 
+	 * @param maxAttempts
+	 *            The number of times a request is sent at most, including the
+	 *            first time.
+	 * @param baseDelay
+	 *            The smallest delay between two attempts, in milliseconds.
+	 * @param maxDelay
+	 *            The largest delay between two attempts, in milliseconds.
+	 * @param budget
+	 *            The budget every retry has to be granted by.
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay,
+			RetryBudget budget) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be >= 1");
+		}
+		if (baseDelay < 1 || maxDelay < baseDelay) {
+			throw new IllegalArgumentException(
+					"delays must satisfy 1 <= baseDelay <= maxDelay");
+		}
+		this.maxAttempts = maxAttempts;
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.budget = budget;
+	}
+
+	public int getMaxAttempts() {
+		return this.maxAttempts;
+	}
+
+	public long getBaseDelay() {
+		return this.baseDelay;
+	}
+
+	public long getMaxDelay() {
+		return this.maxDelay;
+	}
+
+	public RetryBudget getBudget() {
+		return this.budget;
+	}
+
+	/**
+	 * Returns the number of retries made under this policy.
+	 */
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	/**
+	 * Returns true if the response reports a transient failure. For 4xx
+	 * responses this reads the error document from the error stream, which
+	 * the JDK's own connections only hand out once; AWSAuthConnection reads
+	 * it into memory first, so its callers still get the document.
+	 * 
+	 * @param response
+	 *            A request whose response has arrived.
+	 */
+	public boolean isRetryable(HttpURLConnection response) throws IOException {
+		int status = response.getResponseCode();
+		if (status < 400) {
+			return false;
+		}
+		if (status >= 500) {
+			return status != HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+		}
+		if (status == HttpURLConnection.HTTP_BAD_REQUEST
+				|| status == HttpURLConnection.HTTP_FORBIDDEN
+				|| status == HttpURLConnection.HTTP_CONFLICT) {
+			return isRetryable(getErrorCode(response));
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if an S3 error code reports a transient failure.
+	 * 
+	 * @param errorCode
+	 *            The Code of an S3 error document (can be null).
+	 */
+	public boolean isRetryable(String errorCode) {
+		return RETRYABLE_ERROR_CODES.contains(errorCode);
+	}
+
+	/**
+	 * Returns true if the request may succeed when sent again.
+	 * 
+	 * @param e
+	 *            The exception the request failed with.
+	 */
+	public boolean isRetryable(IOException e) {
+		if (e instanceof UnknownHostException
+				|| e instanceof MalformedURLException
+				|| e instanceof ProtocolException
+				|| e instanceof FileNotFoundException
+				|| e instanceof SSLException
+				|| e instanceof CircuitOpenException) {
+			return false;
+		}
+		// timeouts are worth another try, an interrupted thread isn't
+		return !(e instanceof InterruptedIOException)
+				|| e instanceof SocketTimeoutException;
+	}
+
+	/**
+	 * Decides whether another attempt may be made after the given one failed,
+	 * taking a retry from the budget if so.
+	 * 
+	 * @param attempt
+	 *            The number of the attempt that failed, starting at 1.
+	 */
+	public boolean allowRetry(int attempt) {
+		if (attempt >= maxAttempts || !budget.tryAcquire()) {
+			return false;
+		}
+		retryCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Records a request that succeeded, which refills the budget.
+	 */
+	public void recordSuccess() {
+		budget.recordSuccess();
+	}
+
+	/**
+	 * Returns the delay before the next attempt.
+	 * 
+	 * @param previousDelay
+	 *            The delay before the previous attempt, 0 for the first retry.
+	 */
+	public long nextDelay(long previousDelay) {
+		long upper = Math.min(maxDelay, Math.max(baseDelay, previousDelay) * 3);
+		return ThreadLocalRandom.current().nextLong(baseDelay, upper + 1);
+	}
+
+	/**
+	 * Sleeps for the given delay before the next attempt.
+	 * 
+	 * @param delay
+	 *            The delay in milliseconds.
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted while waiting.
+	 */
+	public void backoff(long delay) throws InterruptedIOException {
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while backing off");
+		}
+	}
+
+	/**
+	 * Returns the Code of the S3 error document in the error stream of a
+	 * response, or null if there is none.
+	 * 
+	 * @param response
+	 *            A request whose response has arrived.
+	 */
+	public static String getErrorCode(HttpURLConnection response) {
+		InputStream in = response.getErrorStream();
+		if (in == null) {
+			return null;
+		}
+		try {
+			ErrorHandler handler = new ErrorHandler();
+			XMLReader xr = Utils.createXMLReader();
+			xr.setContentHandler(handler);
+			xr.setErrorHandler(handler);
+			xr.parse(new InputSource(in));
+			return handler.code;
+		} catch (SAXException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Picks the Code out of an S3 error document.
+	 */
+	static class ErrorHandler extends DefaultHandler {
+		String code;
+
+		private StringBuffer currText;
+
+		public void startElement(String uri, String name, String qName,
+				Attributes attrs) {
+			if (name.equals("Code")) {
+				this.currText = new StringBuffer();
+			}
+		}
+
+		public void endElement(String uri, String name, String qName) {
+			if (name.equals("Code") && this.currText != null) {
+				this.code = this.currText.toString().trim();
+				this.currText = null;
+			}
+		}
+
+		public void characters(char ch[], int start, int length) {
+			if (this.currText != null) {
+				this.currText.append(ch, start, length);
+			}
+		}
+	}
+}
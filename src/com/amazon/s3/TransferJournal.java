@@ -0,0 +1,335 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.amazon.s3;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the progress of a long transfer in a small file, so that a transfer
+ * cut off by a crash or a lost network can pick up where it stopped when it
+ * is run again. A journal holds records of a type and a value, such as the
+ * ID of a multipart upload, the parts already uploaded, the ranges already
+ * downloaded or the last key up to which a copy is done. A value that is set
+ * replaces the ones before it, and the file is compacted every so often so
+ * it only grows with the values that are kept.
+ * <p>
+ * The file is named after what is being transferred, so running the same
+ * transfer again finds it. It is created with the first record, each record
+ * is written out before the call returns, and it is deleted once the
+ * transfer is complete. A record cut short by a crash is ignored.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class TransferJournal {
+
+	/** The directory journals are kept in unless told otherwise */
+	public static final File DEFAULT_DIRECTORY = new File(System
+			.getProperty("user.home"), ".jsh3ll" + File.separator + "journal");
+
+	private static final String HEADER = "jsh3ll-journal 1";
+
+	/** Lines replaced by set() after which the file is compacted */
+	private static final int COMPACT_AFTER = 1000;
+
+	private final File file;
+
+	private final String identity;
+
+	private final Map<String, List<String>> records = new HashMap<String, List<String>>();
+
+	private final Set<String> recorded = new HashSet<String>();
+
+	private FileOutputStream out;
+
+	private int replaced;
+
+	/**
+	 * Opens the journal of a transfer, reading what it has recorded if the
+	 * transfer was started before.
+	 * 
+	 * @param directory
+	 *            The directory to keep the journal in.
+	 * @param identity
+	 *            The strings that tell this transfer from any other, such as
+	 *            the kind of transfer, the bucket, the key and the local file.
+	 */
+	public TransferJournal(File directory, String... identity)
+			throws IOException {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < identity.length; i++) {
+			if (i > 0) {
+				buf.append(' ');
+			}
+			buf.append(Utils.urlencode(String.valueOf(identity[i])));
+		}
+		this.identity = buf.toString();
+		this.file = new File(directory, name(this.identity) + ".journal");
+		load();
+	}
+
+	/**
+	 * Returns the file the journal is kept in, which may not exist yet.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns true if the journal holds any records.
+	 */
+	public synchronized boolean isEmpty() {
+		return records.isEmpty();
+	}
+
+	/**
+	 * Returns the last value recorded with the given type, or null if there
+	 * is none.
+	 */
+	public synchronized String get(String type) {
+		List<String> values = records.get(type);
+		return values == null ? null : values.get(values.size() - 1);
+	}
+
+	/**
+	 * Returns the values recorded with the given type, in the order they were
+	 * recorded.
+	 */
+	public synchronized List<String> getAll(String type) {
+		List<String> values = records.get(type);
+		return values == null ? Collections.<String> emptyList()
+				: new ArrayList<String>(values);
+	}
+
+	/**
+	 * Returns true if the given value has been recorded with the given type.
+	 */
+	public synchronized boolean contains(String type, String value) {
+		return recorded.contains(type + ' ' + value);
+	}
+
+	/**
+	 * Records a value with the given type and writes it to the journal.
+	 * 
+	 * @param type
+	 *            The type of the record, a single word.
+	 * @param value
+	 *            The value, any string.
+	 */
+	public synchronized void record(String type, String value)
+			throws IOException {
+		if (out == null) {
+			File directory = file.getParentFile();
+			if (directory != null) {
+				directory.mkdirs();
+			}
+			boolean started = file.length() > 0;
+			out = new FileOutputStream(file, true);
+			if (!started) {
+				write(HEADER + ' ' + identity);
+			}
+		}
+		write(type + ' ' + Utils.urlencode(value));
+		add(type, value);
+	}
+
+	/**
+	 * Records a value with the given type in place of any recorded before
+	 * it, so get() returns it and only it is kept.
+	 * 
+	 * @param type
+	 *            The type of the record, a single word.
+	 * @param value
+	 *            The value, any string.
+	 */
+	public synchronized void set(String type, String value)
+			throws IOException {
+		List<String> values = records.remove(type);
+		if (values != null) {
+			for (String old : values) {
+				recorded.remove(type + ' ' + old);
+			}
+			replaced += values.size();
+		}
+		if (replaced >= COMPACT_AFTER) {
+			add(type, value);
+			compact();
+		} else {
+			record(type, value);
+		}
+	}
+
+	/**
+	 * Forgets every record, for when the transfer has to start over.
+	 */
+	public synchronized void reset() throws IOException {
+		close();
+		records.clear();
+		recorded.clear();
+		replaced = 0;
+		Files.deleteIfExists(file.toPath());
+	}
+
+	/**
+	 * Deletes the journal, the transfer is done.
+	 */
+	public void complete() throws IOException {
+		reset();
+	}
+
+	/**
+	 * Closes the journal, keeping its records for the next run.
+	 */
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Deletes every journal in the given directory, returns how many there
+	 * were.
+	 */
+	public static int deleteAll(File directory) {
+		File[] files = directory.listFiles();
+		int deleted = 0;
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				if (files[i].getName().endsWith(".journal")
+						&& files[i].delete()) {
+					deleted++;
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Rewrites the file with only the records that are kept, replacing the
+	 * old one in a single step so a crash leaves one or the other.
+	 */
+	private void compact() throws IOException {
+		close();
+		File directory = file.getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		File compacted = new File(directory, file.getName() + ".tmp");
+		out = new FileOutputStream(compacted);
+		try {
+			StringBuilder buf = new StringBuilder(HEADER + ' ' + identity
+					+ '\n');
+			for (Map.Entry<String, List<String>> entry : records.entrySet()) {
+				for (String value : entry.getValue()) {
+					buf.append(entry.getKey()).append(' ').append(
+							Utils.urlencode(value)).append('\n');
+				}
+			}
+			out.write(buf.toString().getBytes(StandardCharsets.UTF_8));
+			out.getFD().sync();
+		} finally {
+			close();
+		}
+		Files.move(compacted.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		out = new FileOutputStream(file, true);
+		replaced = 0;
+	}
+
+	private void write(String line) throws IOException {
+		// unbuffered, the line reaches the OS before record() returns
+		out.write((line + '\n').getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void add(String type, String value) {
+		List<String> values = records.get(type);
+		if (values == null) {
+			values = new ArrayList<String>();
+			records.put(type, values);
+		}
+		values.add(value);
+		recorded.add(type + ' ' + value);
+	}
+
+	/**
+	 * Reads the records of an earlier run. A journal of another transfer
+	 * with the same name is ignored, and a record cut short is dropped so
+	 * new records start on a line of their own.
+	 */
+	private void load() throws IOException {
+		if (!file.isFile()) {
+			return;
+		}
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		String text = new String(bytes, StandardCharsets.UTF_8);
+		int end = text.lastIndexOf('\n') + 1;
+		String[] lines = text.substring(0, end).split("\n");
+		if (end == 0 || !lines[0].equals(HEADER + ' ' + identity)) {
+			Files.deleteIfExists(file.toPath());
+			return;
+		}
+		for (int i = 1; i < lines.length; i++) {
+			int space = lines[i].indexOf(' ');
+			if (space > 0) {
+				add(lines[i].substring(0, space), Utils.urldecode(lines[i]
+						.substring(space + 1)));
+			}
+		}
+		if (end < bytes.length) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(text.substring(0, end).getBytes(
+						StandardCharsets.UTF_8).length);
+			}
+		}
+	}
+
+	/**
+	 * Names the journal file after a digest of the transfer's identity.
+	 */
+	private static String name(String identity) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return Utils.toHex(digest.digest(identity
+					.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			// should never happen
+			throw new RuntimeException("Could not find SHA-1", e);
+		}
+	}
+}
@@ -11,14 +11,17 @@ package com.amazon.s3;
 
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
-import java.net.URLEncoder;
+import java.net.URLDecoder;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.Base64;
+import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -27,8 +30,6 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 import org.xml.sax.SAXException;
 
-import sun.misc.BASE64Encoder;
-
 public class Utils {
     static final String METADATA_PREFIX = "x-amz-meta-";
     static final String AMAZON_HEADER_PREFIX = "x-amz-";
@@ -37,6 +38,22 @@ public class Utils {
     static final int SECURE_PORT = 443;
     static final int INSECURE_PORT = 80;
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Query parameters that name a sub-resource, and so are signed as part
+     * of the resource.
+     */
+    private static final TreeSet SUB_RESOURCES = new TreeSet();
+    static {
+        SUB_RESOURCES.add("acl");
+        SUB_RESOURCES.add("delete");
+        SUB_RESOURCES.add("partNumber");
+        SUB_RESOURCES.add("torrent");
+        SUB_RESOURCES.add("uploadId");
+        SUB_RESOURCES.add("uploads");
+    }
+
 
     /**
      * HMAC/SHA1 Algorithm per RFC 2104.
@@ -114,16 +131,41 @@ public class Utils {
             buf.append("/" + resource.substring(0, queryIndex));
         }
 
-        // ...unless there is an acl or torrent parameter
-        if (resource.matches(".*[&?]acl($|=|&).*")) {
-            buf.append("?acl");
-        } else if (resource.matches(".*[&?]torrent($|=|&).*")) {
-            buf.append("?torrent");
+        // ...unless they name a sub-resource, like acl or the parts of a
+        // multipart upload
+        if (queryIndex != -1) {
+            buf.append(canonicalSubResources(resource.substring(queryIndex + 1)));
         }
 
         return buf.toString();
     }
 
+    /**
+     * The sub-resources of a query string as they are signed: sorted by name,
+     * with their values decoded.
+     */
+    static String canonicalSubResources(String query) {
+        SortedMap params = new TreeMap();
+        StringTokenizer st = new StringTokenizer(query, "&");
+        while (st.hasMoreTokens()) {
+            String param = st.nextToken();
+            int eq = param.indexOf('=');
+            String name = eq == -1 ? param : param.substring(0, eq);
+            if (SUB_RESOURCES.contains(name)) {
+                params.put(name, eq == -1 ? null : urldecode(param.substring(eq + 1)));
+            }
+        }
+
+        StringBuffer buf = new StringBuffer();
+        for (Iterator i = params.keySet().iterator(); i.hasNext(); ) {
+            String name = (String)i.next();
+            String value = (String)params.get(name);
+            buf.append(buf.length() == 0 ? '?' : '&').append(name);
+            if (value != null) buf.append('=').append(value);
+        }
+        return buf.toString();
+    }
+
     /**
      * Calculate the HMAC/SHA1 on a string.
      * @param data Data to sign
@@ -158,7 +200,7 @@ public class Utils {
         }
 
         // Compute the HMAC on the digest, and set it.
-        String b64 = new BASE64Encoder().encode(mac.doFinal(canonicalString.getBytes()));
+        String b64 = Base64.getEncoder().encodeToString(mac.doFinal(canonicalString.getBytes()));
 
         if (urlencode) {
             return urlencode(b64);
@@ -168,12 +210,18 @@ public class Utils {
     }
 
     static String pathForListOptions(String bucket, String prefix, String marker, Integer maxKeys) {
+        return pathForListOptions(bucket, prefix, marker, maxKeys, null);
+    }
+
+    static String pathForListOptions(String bucket, String prefix, String marker, Integer maxKeys,
+                                     String delimiter) {
         StringBuffer path = new StringBuffer(bucket);
         path.append("?");
 
-        // these two params must be url encoded
+        // these three params must be url encoded
         if (prefix != null) path.append("prefix=" + urlencode(prefix) + "&");
         if (marker != null) path.append("marker=" + urlencode(marker) + "&");
+        if (delimiter != null) path.append("delimiter=" + urlencode(delimiter) + "&");
 
         if (maxKeys != null) path.append("max-keys=" + maxKeys + "&");
         path.deleteCharAt(path.length()-1);     // we've always added exactly one too many chars
@@ -181,15 +229,91 @@ public class Utils {
         return path.toString();
     }
 
-    static String urlencode(String unencoded) {
+    /**
+     * The resource name for a key in a bucket (bucketName + "/" + key), or
+     * just the bucket when the key is empty.
+     */
+    static String resourcePath(String bucket, String key) {
+        boolean isEmptyKey = (key == null) || (key.trim().length() == 0);
+        return isEmptyKey ? bucket : bucket + "/" + urlencode(key);
+    }
+
+    static String urldecode(String encoded) {
         try {
-            return URLEncoder.encode(unencoded, "UTF-8");
+            return URLDecoder.decode(encoded, "UTF-8");
         } catch (UnsupportedEncodingException e) {
             // should never happen
-            throw new RuntimeException("Could not url encode to UTF-8", e);
+            throw new RuntimeException("Could not url decode to UTF-8", e);
         }
     }
 
+    /**
+     * Percent-encodes a string per RFC 3986, leaving only the unreserved
+     * characters (letters, digits and -._~) as they are.  A string that has
+     * nothing to encode is returned without copying it.
+     */
+    static String urlencode(String unencoded) {
+        int length = unencoded.length();
+        int i = 0;
+        while (i < length && isUnreserved(unencoded.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return unencoded;
+        }
+
+        StringBuilder buf = new StringBuilder(length + 16);
+        buf.append(unencoded, 0, i);
+        for (; i < length; ++ i) {
+            char c = unencoded.charAt(i);
+            if (c < 0x80) {
+                if (isUnreserved(c)) {
+                    buf.append(c);
+                } else {
+                    appendEscaped(buf, c);
+                }
+                continue;
+            }
+
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(unencoded.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, unencoded.charAt(++ i));
+            } else if (Character.isSurrogate(c)) {
+                // not a pair, encoded the way String.getBytes() would
+                codePoint = '?';
+            }
+
+            // UTF-8
+            if (codePoint < 0x80) {
+                appendEscaped(buf, codePoint);
+            } else if (codePoint < 0x800) {
+                appendEscaped(buf, 0xc0 | (codePoint >> 6));
+                appendEscaped(buf, 0x80 | (codePoint & 0x3f));
+            } else if (codePoint < 0x10000) {
+                appendEscaped(buf, 0xe0 | (codePoint >> 12));
+                appendEscaped(buf, 0x80 | ((codePoint >> 6) & 0x3f));
+                appendEscaped(buf, 0x80 | (codePoint & 0x3f));
+            } else {
+                appendEscaped(buf, 0xf0 | (codePoint >> 18));
+                appendEscaped(buf, 0x80 | ((codePoint >> 12) & 0x3f));
+                appendEscaped(buf, 0x80 | ((codePoint >> 6) & 0x3f));
+                appendEscaped(buf, 0x80 | (codePoint & 0x3f));
+            }
+        }
+        return buf.toString();
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+            || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_'
+            || c == '~';
+    }
+
+    private static void appendEscaped(StringBuilder buf, int b) {
+        buf.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+
     static XMLReader createXMLReader() {
         try {
             return XMLReaderFactory.createXMLReader();
@@ -220,4 +344,42 @@ public class Utils {
         }
         return buf.toString();
     }
+
+    /**
+     * Escapes the characters that can't appear as they are in XML text.
+     */
+    static String escapeXml(String text) {
+        StringBuffer buf = null;
+        for (int i = 0; i < text.length(); ++ i) {
+            char c = text.charAt(i);
+            String entity = c == '&' ? "&amp;" : c == '<' ? "&lt;"
+                    : c == '>' ? "&gt;" : c == '"' ? "&quot;"
+                    : c == '\'' ? "&apos;" : c == '\r' ? "&#13;" : null;
+            if (entity != null && buf == null) {
+                buf = new StringBuffer(text.length() + 16);
+                buf.append(text, 0, i);
+            }
+            if (buf != null) {
+                if (entity != null) {
+                    buf.append(entity);
+                } else {
+                    buf.append(c);
+                }
+            }
+        }
+        return buf == null ? text : buf.toString();
+    }
+
+    /**
+     * Formats bytes as lowercase hex, the way S3 writes MD5 ETags.
+     */
+    static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++ i) {
+            hex[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
 }
@@ -0,0 +1,205 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.silvasoftinc.s3;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs the requests of a bulk command (deleteall, copyall, putdir, ...)
+ * concurrently, each on its own virtual thread. Blocking HttpURLConnection
+ * I/O parks the virtual thread rather than an OS thread, so the only limit on
+ * the number of requests in flight is the concurrency given to the
+ * constructor, or the current limit of a ConcurrencyController. submit()
+ * blocks while that many tasks are running, which keeps the producer (usually
+ * a bucket listing loop) from racing ahead.
+ * <p>
+ * Closing the executor waits for all submitted tasks to finish. Tasks should
+ * report their own errors; any that escape are counted, and close() fails
+ * with the first of them, carrying the others as suppressed exceptions.
+ */
+public class BulkExecutor implements AutoCloseable {
+
+	/**
+	 * A unit of work that may fail with a checked exception.
+	 */
+	public interface Task {
+		void run() throws Exception;
+	}
+
+	private final ExecutorService executor;
+
+	private final IntSupplier limit;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition finished = lock.newCondition();
+
+	private int running;
+
+	/** Most failures kept as suppressed exceptions of the first */
+	private static final int MAX_SUPPRESSED = 100;
+
+	private Throwable failure;
+
+	private int failureCount;
+
+	/**
+	 * Create a new bulk executor.
+	 * 
+	 * @param concurrency
+	 *            The maximum number of tasks running at once [>= 1]
+	 */
+	public BulkExecutor(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be >= 1");
+		}
+		this.executor = Executors.newVirtualThreadPerTaskExecutor();
+		this.limit = () -> concurrency;
+	}
+
+	/**
+	 * Create a new bulk executor that follows the limit of a concurrency
+	 * controller as it changes. When the limit drops, no new tasks start
+	 * until enough running ones have finished.
+	 * 
+	 * @param controller
+	 *            The controller deciding how many tasks run at once [may not
+	 *            be null]
+	 */
+	public BulkExecutor(ConcurrencyController controller) {
+		this.executor = Executors.newVirtualThreadPerTaskExecutor();
+		this.limit = controller::getLimit;
+	}
+
+	/**
+	 * Submits a task, waiting for a free slot if the maximum number of tasks
+	 * are already running. Tasks should handle their own errors; exceptions
+	 * escaping a task are reported by close().
+	 * 
+	 * @param task
+	 *            The task to run [may not be null]
+	 */
+	public void submit(final Task task) throws InterruptedException {
+		lock.lock();
+		try {
+			while (running >= limit.getAsInt()) {
+				finished.await();
+			}
+			running++;
+		} finally {
+			lock.unlock();
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					task.run();
+				} catch (Throwable t) {
+					recordFailure(t);
+				} finally {
+					release();
+				}
+			});
+		} catch (RuntimeException e) {
+			release();
+			throw e;
+		}
+	}
+
+	private void recordFailure(Throwable t) {
+		lock.lock();
+		try {
+			if (failure == null) {
+				failure = t;
+			} else if (failureCount <= MAX_SUPPRESSED) {
+				failure.addSuppressed(t);
+			}
+			failureCount++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of tasks that failed with an exception so far.
+	 */
+	public int getFailureCount() {
+		lock.lock();
+		try {
+			return failureCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release() {
+		lock.lock();
+		try {
+			running--;
+			finished.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for all submitted tasks to finish. If the waiting thread is
+	 * interrupted, the running tasks are interrupted too and still waited
+	 * for, and the thread's interrupt status is set again on return.
+	 * 
+	 * @throws IOException
+	 *             If any task failed: the first exception thrown by a task,
+	 *             with the others suppressed, or one that says how many
+	 *             failed.
+	 */
+	public void close() throws IOException {
+		executor.close();
+		Throwable t;
+		int count;
+		lock.lock();
+		try {
+			t = failure;
+			count = failureCount;
+		} finally {
+			lock.unlock();
+		}
+		if (t == null) {
+			return;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		if (count == 1 && t instanceof IOException) {
+			throw (IOException) t;
+		}
+		if (count == 1 && t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		throw new IOException(count + " task(s) failed, the first with: " + t,
+				t);
+	}
+}
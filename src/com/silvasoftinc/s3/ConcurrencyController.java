@@ -0,0 +1,201 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.silvasoftinc.s3;
+
+import com.amazon.s3.RequestListener;
+
+/**
+ * Adjusts how many requests a bulk command keeps in flight, in the way TCP
+ * adjusts its congestion window (additive increase, multiplicative
+ * decrease). Register it as the RequestListener of the connections the
+ * command uses and give it to a BulkExecutor.
+ * <p>
+ * Response times and throughput are measured over rounds of about one
+ * request per slot, but at least MIN_ROUND_MILLIS long. After a round in
+ * which throughput kept up and the average response time stayed within
+ * LATENCY_TOLERANCE times the lowest seen, the limit grows by one. A 503
+ * response or a failed connection halves it, a round with a response time
+ * spike cuts it by a quarter. The limit is cut at most once a round, so a
+ * burst of errors caused by one overload doesn't collapse it.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class ConcurrencyController implements RequestListener {
+
+	/**
+	 * Is told when the limit changes.
+	 */
+	public interface Observer {
+		/**
+		 * @param previous
+		 *            The limit before the change.
+		 * @param limit
+		 *            The new limit.
+		 * @param throughput
+		 *            Requests per second in the last round.
+		 * @param latencyMillis
+		 *            Average response time in the last round.
+		 */
+		void limitChanged(int previous, int limit, double throughput,
+				long latencyMillis);
+	}
+
+	/** Shortest round over which throughput is measured */
+	private static final long MIN_ROUND_MILLIS = 100;
+
+	/** How far above the lowest response time counts as a spike */
+	private static final double LATENCY_TOLERANCE = 2.0;
+
+	/** How far throughput may drop for the limit to still grow */
+	private static final double THROUGHPUT_TOLERANCE = 0.9;
+
+	/** Decrease on a 503 response or a failed connection */
+	private static final double ERROR_DECREASE = 0.5;
+
+	/** Decrease on a response time spike */
+	private static final double LATENCY_DECREASE = 0.75;
+
+	private final int maxLimit;
+
+	private volatile int limit;
+
+	private volatile Observer observer;
+
+	private long roundStart = System.nanoTime();
+
+	private int roundCount;
+
+	private long roundNanos;
+
+	private boolean roundCut;
+
+	private double lastThroughput;
+
+	private double lowestLatency = Double.MAX_VALUE;
+
+	/**
+	 * Create a new concurrency controller.
+	 * 
+	 * @param initialLimit
+	 *            The number of requests to start with.
+	 * @param maxLimit
+	 *            The most requests to ever allow at once.
+	 */
+	public ConcurrencyController(int initialLimit, int maxLimit) {
+		if (initialLimit < 1 || initialLimit > maxLimit) {
+			throw new IllegalArgumentException(
+					"initialLimit must be between 1 and maxLimit");
+		}
+		this.maxLimit = maxLimit;
+		this.limit = initialLimit;
+	}
+
+	/**
+	 * Returns the number of requests currently allowed in flight.
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Sets the observer told about changes of the limit.
+	 * 
+	 * @param observer
+	 *            The observer, or null for none.
+	 */
+	public void setObserver(Observer observer) {
+		this.observer = observer;
+	}
+
+	/**
+	 * Starts measuring afresh, for example at the start of a new command,
+	 * keeping the current limit.
+	 */
+	public synchronized void reset() {
+		startRound(System.nanoTime());
+		lastThroughput = 0;
+		lowestLatency = Double.MAX_VALUE;
+	}
+
+	public void requestCompleted(int status, long nanos) {
+		int previous = limit;
+		int changed = -1;
+		double throughput = 0;
+		long latency = 0;
+		synchronized (this) {
+			long now = System.nanoTime();
+			previous = limit;
+			roundCount++;
+			roundNanos += nanos;
+			double average = (double) roundNanos / roundCount;
+			latency = (long) (average / 1000000);
+			throughput = roundCount * 1e9 / Math.max(1, now - roundStart);
+
+			if (status == 503 || status == 0) {
+				if (!roundCut) {
+					changed = setLimit((int) (limit * ERROR_DECREASE));
+					roundCut = true;
+				}
+			} else if (roundCount >= limit
+					&& now - roundStart >= MIN_ROUND_MILLIS * 1000000) {
+				if (average > lowestLatency * LATENCY_TOLERANCE) {
+					if (!roundCut) {
+						changed = setLimit((int) (limit * LATENCY_DECREASE));
+					}
+				} else if (!roundCut
+						&& throughput >= lastThroughput * THROUGHPUT_TOLERANCE) {
+					changed = setLimit(limit + 1);
+				}
+				lowestLatency = Math.min(lowestLatency, average);
+				lastThroughput = throughput;
+				startRound(now);
+			}
+		}
+
+		Observer o = observer;
+		if (changed != -1 && o != null) {
+			o.limitChanged(previous, changed, throughput, latency);
+		}
+	}
+
+	/**
+	 * Sets the limit within its bounds, returns the new limit or -1 if it
+	 * didn't change.
+	 */
+	private int setLimit(int newLimit) {
+		newLimit = Math.max(1, Math.min(maxLimit, newLimit));
+		if (newLimit == limit) {
+			return -1;
+		}
+		limit = newLimit;
+		return newLimit;
+	}
+
+	private void startRound(long now) {
+		roundStart = now;
+		roundCount = 0;
+		roundNanos = 0;
+		roundCut = false;
+	}
+}
@@ -0,0 +1,106 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+
+package com.silvasoftinc.s3;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Follows keys that are started in key order, as a listing hands them out,
+ * but finish in any order, as they do on a BulkExecutor. The watermark is the
+ * last key up to which every key has finished, so a bulk command that
+ * journals it can skip everything up to it when it is run again, without
+ * remembering each key on its own.
+ * <p>
+ * Only the keys that are started and not yet passed by the watermark are
+ * held, which is about as many as are in flight.
+ * <p>
+ * Instances of this class are safe for concurrent access by multiple threads.
+ */
+public class KeyWatermark {
+
+	/** Started keys in order, and whether each has finished */
+	private final Map<String, Boolean> keys = new LinkedHashMap<String, Boolean>();
+
+	private String watermark;
+
+	/**
+	 * Create a watermark.
+	 * 
+	 * @param watermark
+	 *            The key up to which an earlier run finished [may be null]
+	 */
+	public KeyWatermark(String watermark) {
+		this.watermark = watermark;
+	}
+
+	/**
+	 * Returns the last key up to which every key has finished [null if there
+	 * is none yet]
+	 */
+	public synchronized String get() {
+		return watermark;
+	}
+
+	/**
+	 * Returns true if the key is at or below the watermark.
+	 */
+	public synchronized boolean isPassed(String key) {
+		return watermark != null && key.compareTo(watermark) <= 0;
+	}
+
+	/**
+	 * Notes a key that is about to be worked on. Keys must be started in key
+	 * order, apart from ones below the watermark that are tried again.
+	 */
+	public synchronized void start(String key) {
+		keys.put(key, Boolean.FALSE);
+	}
+
+	/**
+	 * Notes a key that has finished, and moves the watermark past it if every
+	 * key started before it has finished too.
+	 * 
+	 * @return True if the watermark moved
+	 */
+	public synchronized boolean finish(String key) {
+		keys.put(key, Boolean.TRUE);
+		boolean moved = false;
+		for (Iterator<Map.Entry<String, Boolean>> i = keys.entrySet()
+				.iterator(); i.hasNext();) {
+			Map.Entry<String, Boolean> entry = i.next();
+			if (!entry.getValue().booleanValue()) {
+				break;
+			}
+			if (watermark == null || entry.getKey().compareTo(watermark) > 0) {
+				// a key tried again below the watermark doesn't move it back
+				watermark = entry.getKey();
+				moved = true;
+			}
+			i.remove();
+		}
+		return moved;
+	}
+}
@@ -0,0 +1,170 @@
+// Copyright (c) 2006 SilvaSoft, Inc.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a
+// copy of this software and associated documentation files (the "Software"),
+// to deal in the Software without restriction, including without limitation
+// the rights to use, copy, modify, merge, publish, distribute, sublicense,
+// and/or sell copies of the Software, and to permit persons to whom the 
+// Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+// DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+// OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE
+// USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+// author:    http://www.silvasoftinc.com
+
+package com.silvasoftinc.s3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.amazon.s3.AWSAuthConnection;
+import com.amazon.s3.BucketPages;
+import com.amazon.s3.ListBucketResponse;
+import com.amazon.s3.ListEntry;
+
+/**
+ * Lists a bucket on a virtual thread of its own and hands the pages to the
+ * caller through a bounded queue, so a bulk command (deleteall, copyall, ...)
+ * can work on the first pages while later ones are still being listed. When
+ * the queue is full the lister waits, so memory use stays at a few pages no
+ * matter how large the bucket is; together with BulkExecutor.submit(), which
+ * waits for a free slot, slow workers hold back the listing rather than the
+ * other way around.
+ * <p>
+ * Closing the pipeline stops the lister.
+ */
+public class ListingPipeline implements AutoCloseable {
+
+	/** Default number of pages listed ahead of the caller */
+	public static final int DEFAULT_PAGES = 4;
+
+	/** Marks the end of the listing in the queue */
+	private static final Object END = new Object();
+
+	private final AWSAuthConnection conn;
+
+	private final String bucket;
+
+	private final String prefix;
+
+	private final BlockingQueue<Object> pages;
+
+	private final Thread lister;
+
+	private volatile Throwable failure;
+
+	private boolean finished;
+
+	/**
+	 * Start listing a bucket.
+	 * 
+	 * @param conn
+	 *            The connection to list the bucket with [may not be null]
+	 * @param bucket
+	 *            The bucket to list [may not be null]
+	 * @param prefix
+	 *            Only list keys starting with this prefix [may be null]
+	 * @param pages
+	 *            The maximum number of pages listed ahead of the caller [>= 1]
+	 */
+	public ListingPipeline(AWSAuthConnection conn, String bucket,
+			String prefix, int pages) {
+		if (pages < 1) {
+			throw new IllegalArgumentException("pages must be >= 1");
+		}
+		this.conn = conn;
+		this.bucket = bucket;
+		this.prefix = prefix;
+		this.pages = new ArrayBlockingQueue<Object>(pages);
+		this.lister = Thread.ofVirtual().name("list " + bucket).start(
+				this::list);
+	}
+
+	private void list() {
+		try (BucketPages listing = new BucketPages(conn, bucket, prefix, 0,
+				null)) {
+			while (listing.hasNext()) {
+				ListBucketResponse response = listing.next();
+				List<ListEntry> page = response.entries;
+
+				if (page == null) {
+					throw new IOException("Could not list bucket '" + bucket
+							+ "': " + response.connection.getResponseCode()
+							+ " " + response.connection.getResponseMessage());
+				}
+				if (page.size() > 0) {
+					pages.put(page);
+				}
+			}
+		} catch (InterruptedException e) {
+			return;
+		} catch (UncheckedIOException e) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			failure = e.getCause();
+		} catch (Throwable t) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			failure = t;
+		}
+		try {
+			pages.put(END);
+		} catch (InterruptedException e) {
+			// closed before the caller reached the end
+		}
+	}
+
+	/**
+	 * Returns the next page of the listing, waiting for it to be listed if
+	 * necessary.
+	 * 
+	 * @return The entries of the next page, or null at the end of the listing
+	 * @throws IOException
+	 *             If listing the page failed
+	 */
+	public List<ListEntry> nextPage() throws IOException {
+		if (finished) {
+			return null;
+		}
+		Object page;
+		try {
+			page = pages.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted waiting for a page");
+		}
+		if (page != END) {
+			return (List<ListEntry>) page;
+		}
+		finished = true;
+		Throwable t = failure;
+		if (t instanceof IOException) {
+			throw (IOException) t;
+		} else if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return null;
+	}
+
+	/**
+	 * Stops the listing if it hasn't finished yet.
+	 */
+	public void close() {
+		lister.interrupt();
+	}
+}